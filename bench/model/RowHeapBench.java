@@ -0,0 +1,133 @@
+package model;
+
+import java.time.LocalDate;
+import java.util.function.IntFunction;
+
+import javafx.beans.property.IntegerProperty;
+import javafx.beans.property.SimpleIntegerProperty;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.beans.property.StringProperty;
+
+/**
+ * Heap cost per row of {@link FoodItem} and {@link Order}, next to the layouts they replaced:
+ * a FoodItem holding five eager Simple*Property objects and its own category and expiry strings,
+ * and an Order holding its own NGO, product name and date strings. Builds 500,000 rows of each
+ * kind (distinct names, 20 categories, 30 NGOs, one expiry date in ten blank), keeps them
+ * reachable and divides the growth of the used heap, measured after repeated GCs, by the row
+ * count.
+ * It also measures FoodItem with every property bound, the worst case for lazy properties.
+ *
+ * Plain main: compile it next to src and run {@code java -XX:+UseSerialGC model.RowHeapBench [rows]};
+ * a single-threaded collector makes the used-heap readings steadier. Figures are approximate and
+ * depend on the JVM (compressed oops, object alignment).
+ */
+public final class RowHeapBench {
+    private static Object[] rows;
+
+    public static void main(String[] args) throws InterruptedException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        long today = LocalDate.now().toEpochDay();
+        String[] categories = new String[20];
+        for (int i = 0; i < categories.length; i++) categories[i] = "Category " + i;
+
+        long base = usedHeap();
+        build(count, i -> new EagerFoodItem(i + 1, "Food item " + i, new String(categories[i % 20]), 5 + i % 50,
+                expiryDate(i, today), FoodItem.parseExpiryDay(expiryDate(i, today))));
+        report("FoodItem, five eager properties", base, count);
+
+        rows = null;
+        base = usedHeap();
+        build(count, i -> new FoodItem(i + 1, "Food item " + i, new String(categories[i % 20]), 5 + i % 50,
+                expiryDate(i, today), FoodItem.parseExpiryDay(expiryDate(i, today))));
+        report("FoodItem", base, count);
+        bindAll();
+        report("FoodItem, all properties bound", base, count);
+
+        rows = null;
+        base = usedHeap();
+        build(count, i -> new PlainOrder(i + 1, "ngo" + i % 30, i % 1000, "Food item " + i % 1000, 1 + i % 9,
+                LocalDate.ofEpochDay(today - i % 365).toString()));
+        report("Order, own strings", base, count);
+
+        rows = null;
+        base = usedHeap();
+        build(count, i -> new Order(i + 1, "ngo" + i % 30, i % 1000, "Food item " + i % 1000, 1 + i % 9,
+                LocalDate.ofEpochDay(today - i % 365).toString()));
+        report("Order", base, count);
+    }
+
+    /** Keeps {@code count} rows reachable; main holds no row references itself, so dropped ones are collectable. */
+    private static void build(int count, IntFunction<Object> row) {
+        Object[] built = new Object[count];
+        for (int i = 0; i < count; i++) built[i] = row.apply(i);
+        rows = built;
+    }
+
+    private static void bindAll() {
+        for (Object row : rows) {
+            FoodItem item = (FoodItem) row;
+            item.idProperty();
+            item.nameProperty();
+            item.categoryProperty();
+            item.quantityProperty();
+            item.expiryDateProperty();
+        }
+    }
+
+    private static String expiryDate(int i, long today) {
+        return i % 10 == 0 ? "" : LocalDate.ofEpochDay(today + i % 400).toString();
+    }
+
+    private static void report(String what, long base, int rows) throws InterruptedException {
+        System.out.printf("%-32s %7.1f bytes/row%n", what, (usedHeap() - base) / (double) rows);
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /** FoodItem's fields before properties became lazy. */
+    private static final class EagerFoodItem {
+        private final IntegerProperty id;
+        private final StringProperty name;
+        private final StringProperty category;
+        private final IntegerProperty quantity;
+        private final StringProperty expiryDate;
+        private int expiryDay;
+        private StockStatus status;
+        private long statusDay;
+
+        EagerFoodItem(int id, String name, String category, int quantity, String expiryDate, int expiryDay) {
+            this.id = new SimpleIntegerProperty(id);
+            this.name = new SimpleStringProperty(name);
+            this.category = new SimpleStringProperty(category);
+            this.quantity = new SimpleIntegerProperty(quantity);
+            this.expiryDate = new SimpleStringProperty(expiryDate);
+            this.expiryDay = expiryDay;
+        }
+    }
+
+    /** Order's fields before its strings were dictionary-encoded. */
+    private static final class PlainOrder {
+        private final int id;
+        private final String ngoUsername;
+        private final int itemId;
+        private final String itemName;
+        private final int quantity;
+        private final String orderDate;
+
+        PlainOrder(int id, String ngoUsername, int itemId, String itemName, int quantity, String orderDate) {
+            this.id = id;
+            this.ngoUsername = ngoUsername;
+            this.itemId = itemId;
+            this.itemName = itemName;
+            this.quantity = quantity;
+            this.orderDate = orderDate;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package model;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Compares {@link SearchIndex} with the linear scan it replaced, a lowercase {@code contains} over
+ * every item's name and category. Builds 500,000 synthetic items (two random words plus a lot
+ * number, in one of six categories; seeded, so runs are comparable) and times each query both
+ * ways, then a query that narrows the previous one, as typing does. It also checks that both ways
+ * find the same number of items.
+ *
+ * Plain main: compile it next to src and run {@code java model.SearchIndexBench [items]}.
+ * Timings depend on the machine; compare them with each other, not across machines.
+ */
+public final class SearchIndexBench {
+    private static final String[] WORDS = { "rice", "beans", "flour", "sugar", "milk", "oil", "salt", "pasta",
+            "tomato", "lentil", "corn", "wheat", "soy", "apple", "banana" };
+    private static final String[] CATEGORIES = { "Grain", "Dairy", "Produce", "Canned", "Baking", "Legume" };
+    private static final String[] QUERIES = { "lot1234", "tomato l", "pasta rice lot9", "lot99999",
+            "r", "ri", "ric", "rice", "rice " };
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        Random random = new Random(1);
+        String[] names = new String[count];
+        String[] categories = new String[count];
+        SearchIndex index = new SearchIndex();
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            names[i] = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " lot" + random.nextInt(100_000);
+            categories[i] = CATEGORIES[random.nextInt(CATEGORIES.length)];
+            index.put(i, names[i], categories[i]);
+        }
+        System.out.printf("built index over %,d items in %.0f ms%n", count, millis(System.nanoTime() - start));
+
+        // Earlier rounds warm up the JIT; only the last one is printed
+        for (int round = 1; round <= ROUNDS; round++) {
+            for (String query : QUERIES) {
+                int indexed = 0;
+                start = System.nanoTime();
+                for (int k = 0; k < 20; k++) indexed = index.search(query, null).count();
+                double indexMs = millis(System.nanoTime() - start) / 20;
+
+                int scanned = 0;
+                start = System.nanoTime();
+                for (int k = 0; k < 5; k++) scanned = linearScan(names, categories, query);
+                double scanMs = millis(System.nanoTime() - start) / 5;
+
+                if (indexed != scanned) {
+                    throw new AssertionError("'" + query + "': index found " + indexed + ", scan found " + scanned);
+                }
+                if (round == ROUNDS) {
+                    System.out.printf("%-18s %7d hits   index %8.3f ms   linear scan %6.1f ms%n",
+                            "'" + query + "'", indexed, indexMs, scanMs);
+                }
+            }
+        }
+
+        SearchIndex.Result previous = index.search("lot12", null);
+        for (int k = 0; k < 100; k++) index.search("lot123", previous);
+        start = System.nanoTime();
+        for (int k = 0; k < 100; k++) index.search("lot123", previous);
+        System.out.printf("narrowing 'lot12' to 'lot123': %.3f ms%n", millis(System.nanoTime() - start) / 100);
+    }
+
+    /** The search the index replaced. */
+    private static int linearScan(String[] names, String[] categories, String query) {
+        String q = query.toLowerCase(Locale.ROOT);
+        int hits = 0;
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].toLowerCase(Locale.ROOT).contains(q) || categories[i].toLowerCase(Locale.ROOT).contains(q)) hits++;
+        }
+        return hits;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
@@ -1,5 +1,6 @@
 package application;
 
+import database.AsyncRepository;
 import database.DBUtil;
 import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
@@ -12,6 +13,8 @@ public class Main extends Application {
     @Override
     public void start(Stage primaryStage) throws Exception {
         DBUtil.initializeDatabase();
+        // Old completed orders move to the archive in the background, between the UI's own writes
+        AsyncRepository.startOrderArchiving();
 
         Parent root = FXMLLoader.load(getClass().getResource("/Login.fxml"));
         primaryStage.setTitle("Food Inventory - Login");
@@ -28,6 +31,12 @@ public class Main extends Application {
         primaryStage.show();
     }
 
+    @Override
+    public void stop() {
+        AsyncRepository.shutdown();
+        DBUtil.shutdown();
+    }
+
     public static void main(String[] args) {
         launch(args);
     }
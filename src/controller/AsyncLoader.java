@@ -0,0 +1,68 @@
+package controller;
+
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyBooleanWrapper;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Runs one kind of background request for a view (e.g. "reload inventory") and delivers
+ * the result on the JavaFX Application Thread. Submitting a new request cancels the one
+ * still in flight, and results of superseded requests are dropped.
+ * All methods must be called on the FX thread.
+ */
+final class AsyncLoader {
+    private final ReadOnlyBooleanWrapper running = new ReadOnlyBooleanWrapper(false);
+    private CompletableFuture<?> inFlight;
+    private long generation;
+
+    <T> void submit(Supplier<CompletableFuture<T>> request, Consumer<T> onSuccess, Consumer<Throwable> onError) {
+        if (inFlight != null) {
+            inFlight.cancel(false);
+        }
+        long current = ++generation;
+        CompletableFuture<T> future = request.get();
+        inFlight = future;
+        running.set(true);
+        future.whenComplete((result, error) -> Platform.runLater(() -> {
+            if (current != generation) return; // superseded by a newer request
+            inFlight = null;
+            running.set(false);
+            deliver(result, error, onSuccess, onError);
+        }));
+    }
+
+    void cancel() {
+        if (inFlight != null) {
+            inFlight.cancel(false);
+            inFlight = null;
+        }
+        generation++;
+        running.set(false);
+    }
+
+    ReadOnlyBooleanProperty runningProperty() {
+        return running.getReadOnlyProperty();
+    }
+
+    /** Delivers the outcome of a one-off background call (e.g. a write) on the FX thread. */
+    static <T> void onFx(CompletableFuture<T> future, Consumer<T> onSuccess, Consumer<Throwable> onError) {
+        future.whenComplete((result, error) -> Platform.runLater(() -> deliver(result, error, onSuccess, onError)));
+    }
+
+    private static <T> void deliver(T result, Throwable error, Consumer<T> onSuccess, Consumer<Throwable> onError) {
+        if (error == null) {
+            onSuccess.accept(result);
+            return;
+        }
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (!(cause instanceof CancellationException)) {
+            onError.accept(cause);
+        }
+    }
+}
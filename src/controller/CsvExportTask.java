@@ -0,0 +1,62 @@
+package controller;
+
+import database.AsyncRepository;
+import database.CsvExporter;
+import javafx.concurrent.Task;
+import javafx.stage.FileChooser;
+import javafx.stage.Window;
+
+import java.io.File;
+import java.time.LocalDate;
+
+/**
+ * Background CSV export with progress and cancellation, for binding to a ProgressBar.
+ * The file is gzip-compressed when its name ends in ".gz".
+ */
+final class CsvExportTask extends Task<Long> {
+    private final CsvExporter.Kind kind;
+    private final String ngoUsername;
+    private final File file;
+
+    private CsvExportTask(CsvExporter.Kind kind, String ngoUsername, File file) {
+        this.kind = kind;
+        this.ngoUsername = ngoUsername;
+        this.file = file;
+    }
+
+    File getFile() { return file; }
+
+    @Override
+    protected Long call() throws Exception {
+        updateMessage("Exporting " + file.getName() + "...");
+        return CsvExporter.export(kind, ngoUsername, file.toPath(), file.getName().endsWith(".gz"),
+                this::isCancelled, (done, total) -> {
+                    updateProgress(done, Math.max(total, done));
+                    updateMessage("Exported " + done + " of " + total + " rows");
+                });
+    }
+
+    /**
+     * Asks for a target file and starts exporting on the database executor; returns null if the
+     * user cancelled the dialog. {@code ngoUsername} limits an orders export to one NGO.
+     */
+    static CsvExportTask start(Window owner, CsvExporter.Kind kind, String ngoUsername) {
+        FileChooser chooser = new FileChooser();
+        String prefix = kind == CsvExporter.Kind.INVENTORY ? "food_inventory_" : "orders_";
+        chooser.setTitle(kind == CsvExporter.Kind.INVENTORY ? "Export Inventory Data" : "Export Orders");
+        chooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("CSV Files", "*.csv"),
+                new FileChooser.ExtensionFilter("Compressed CSV Files", "*.csv.gz"));
+        chooser.setInitialFileName(prefix + LocalDate.now() + ".csv");
+        File file = chooser.showSaveDialog(owner);
+        if (file == null) return null;
+        if (chooser.getSelectedExtensionFilter() != null
+                && chooser.getSelectedExtensionFilter().getExtensions().contains("*.csv.gz")
+                && !file.getName().endsWith(".gz")) {
+            file = new File(file.getParentFile(), file.getName() + ".gz");
+        }
+        CsvExportTask task = new CsvExportTask(kind, ngoUsername, file);
+        AsyncRepository.execute(task);
+        return task;
+    }
+}
@@ -0,0 +1,73 @@
+package controller;
+
+import database.AsyncRepository;
+import database.CsvExporter;
+import database.CsvImporter;
+import javafx.concurrent.Task;
+import javafx.scene.control.ChoiceDialog;
+import javafx.stage.FileChooser;
+import javafx.stage.Window;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/** Background bulk import of a stock CSV manifest, with progress in bytes read and cancellation. */
+final class CsvImportTask extends Task<CsvImporter.ImportResult> {
+    private static final Map<String, CsvImporter.Mode> MODES = new LinkedHashMap<>();
+    static {
+        MODES.put("Add quantities to matching lots", CsvImporter.Mode.ADD_QUANTITY);
+        MODES.put("Replace quantities of matching lots", CsvImporter.Mode.REPLACE_QUANTITY);
+        MODES.put("Always add new rows", CsvImporter.Mode.INSERT);
+    }
+
+    private final File file;
+    private final CsvImporter.Mode mode;
+
+    private CsvImportTask(File file, CsvImporter.Mode mode) {
+        this.file = file;
+        this.mode = mode;
+    }
+
+    File getFile() { return file; }
+
+    @Override
+    protected CsvImporter.ImportResult call() throws Exception {
+        updateMessage("Importing " + file.getName() + "...");
+        CsvExporter.Progress progress = (done, total) -> updateProgress(done, Math.max(total, done));
+        return CsvImporter.importFoodItems(file.toPath(), mode, this::isCancelled, progress);
+    }
+
+    /** One-line outcome for a status label, e.g. "Imported 120 new, 30 updated, 2 rejected (line 7: ...)". */
+    static String summary(CsvImporter.ImportResult result) {
+        String text = "Imported " + result.getInserted() + " new, " + result.getUpdated() + " updated";
+        if (result.getRejectedCount() > 0) {
+            text += ", " + result.getRejectedCount() + " rejected (" + result.getRejected().get(0) + ")";
+        }
+        return text;
+    }
+
+    /**
+     * Asks for a manifest (lots are matched on name, category and expiry date) and how to merge it,
+     * then starts importing on the database executor; returns null if the user backed out.
+     */
+    static CsvImportTask start(Window owner) {
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Import Stock CSV");
+        chooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("CSV Files", "*.csv", "*.csv.gz"));
+        File file = chooser.showOpenDialog(owner);
+        if (file == null) return null;
+
+        ChoiceDialog<String> dialog = new ChoiceDialog<>(MODES.keySet().iterator().next(), MODES.keySet());
+        dialog.initOwner(owner);
+        dialog.setTitle("Import Stock CSV");
+        dialog.setHeaderText("Rows for a lot that already exists (same name, category and expiry date):");
+        Optional<String> choice = dialog.showAndWait();
+        if (choice.isEmpty()) return null;
+
+        CsvImportTask task = new CsvImportTask(file, MODES.get(choice.get()));
+        AsyncRepository.execute(task);
+        return task;
+    }
+}
@@ -0,0 +1,55 @@
+package controller;
+
+import javafx.animation.PauseTransition;
+import javafx.beans.property.ReadOnlyLongProperty;
+import javafx.beans.property.ReadOnlyLongWrapper;
+import javafx.util.Duration;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Today's date as an epoch day, updated on the FX thread when the local date rolls over.
+ * Views key their per-row status on it and refresh in bulk when it changes, instead of
+ * asking the system clock for every cell. Must only be used from the FX thread.
+ */
+final class DayClock {
+    private static final Duration SLACK = Duration.seconds(1); // fire just after midnight, never just before
+
+    private static DayClock instance;
+
+    private final ReadOnlyLongWrapper today = new ReadOnlyLongWrapper(LocalDate.now().toEpochDay());
+    private final PauseTransition timer = new PauseTransition();
+
+    private DayClock() {
+        timer.setOnFinished(e -> tick());
+        schedule();
+    }
+
+    static DayClock get() {
+        if (instance == null) instance = new DayClock();
+        return instance;
+    }
+
+    long today() {
+        return today.get();
+    }
+
+    ReadOnlyLongProperty todayProperty() {
+        return today.getReadOnlyProperty();
+    }
+
+    private void tick() {
+        // Also re-arms after clock changes or a suspended machine, where the timer fires late or early
+        today.set(LocalDate.now().toEpochDay());
+        schedule();
+    }
+
+    private void schedule() {
+        LocalDateTime now = LocalDateTime.now();
+        long millis = now.until(now.toLocalDate().plusDays(1).atStartOfDay(), ChronoUnit.MILLIS);
+        timer.setDuration(Duration.millis(millis).add(SLACK));
+        timer.playFromStart();
+    }
+}
@@ -0,0 +1,49 @@
+package controller;
+
+import model.FoodItem;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * One batch of inventory changes published by {@link InventoryStore}. Changed items are the
+ * canonical instances, already updated in place; {@link #previous} gives their values from
+ * before the update for items some view had loaded. A reload change means the store could
+ * not tell what changed and every view must reload.
+ */
+final class InventoryChange {
+    private final boolean reload;
+    private final long fromSeq;
+    private final long seq;
+    private final List<FoodItem> changed;
+    private final Set<Integer> removedIds;
+    private final Map<Integer, FoodItem> previous;
+
+    InventoryChange(boolean reload, long fromSeq, long seq, List<FoodItem> changed, Set<Integer> removedIds,
+                    Map<Integer, FoodItem> previous) {
+        this.reload = reload;
+        this.fromSeq = fromSeq;
+        this.seq = seq;
+        this.changed = Collections.unmodifiableList(changed);
+        this.removedIds = Collections.unmodifiableSet(removedIds);
+        this.previous = previous;
+    }
+
+    static InventoryChange reload(long seq) {
+        return new InventoryChange(true, seq, seq, List.of(), Set.of(), Map.of());
+    }
+
+    boolean isReload() { return reload; }
+    /** The change sequence this batch starts after. */
+    long getFromSeq() { return fromSeq; }
+    long getSeq() { return seq; }
+    List<FoodItem> getChanged() { return changed; }
+    Set<Integer> getRemovedIds() { return removedIds; }
+
+    /** Values of a changed item before this change, or null if no view had it loaded (e.g. an insert). */
+    FoodItem previous(int id) {
+        return previous.get(id);
+    }
+}
@@ -0,0 +1,247 @@
+package controller;
+
+import database.AsyncRepository;
+import database.CartResult;
+import database.ChangeBus;
+import database.ChangeSet;
+import database.UpdateResult;
+import javafx.application.Platform;
+import model.FoodItem;
+import model.OrderLine;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Application-wide inventory shared by every dashboard. Views get their rows from the database
+ * as before, but pass them through {@link #intern} so there is one {@link FoodItem} per id; the
+ * store keeps those weakly, so rows no view holds can be collected.
+ *
+ * Whenever {@link ChangeBus} reports an inventory change, from a write of this process or from
+ * another one, the store reads the rows changed since its last sync (once, for every view),
+ * updates the shared instances in place (bound table cells follow their properties) and publishes
+ * an {@link InventoryChange} to each listener. Must only be used from the FX thread.
+ */
+final class InventoryStore {
+    private static InventoryStore instance;
+
+    private final Map<Integer, Entry> items = new HashMap<>();
+    private final ReferenceQueue<FoodItem> collected = new ReferenceQueue<>();
+    private final List<WeakReference<Consumer<InventoryChange>>> listeners = new ArrayList<>();
+    private long seq = -1;        // change sequence the shared instances reflect; -1 until known
+    private long version;         // bumped by every applied change
+    private boolean syncing;
+    private boolean syncAgain;
+    private boolean reloadPending;
+    private final AtomicBoolean syncQueued = new AtomicBoolean();
+    private final ChangeBus.Listener busListener = (topics, external) -> {
+        // Called off the FX thread, possibly in bursts; queue at most one sync
+        if (topics.contains(ChangeBus.Topic.INVENTORY) && syncQueued.compareAndSet(false, true)) {
+            Platform.runLater(() -> {
+                syncQueued.set(false);
+                sync();
+            });
+        }
+    };
+
+    private InventoryStore() {
+        ChangeBus.subscribe(busListener);
+        syncing = true;
+        AsyncLoader.onFx(AsyncRepository.loadInventoryHead(), head -> {
+            seq = head.getSeq();
+            finishSync();
+        }, e -> finishSync()); // seq stays unknown; the first sync then reloads everything
+    }
+
+    static InventoryStore get() {
+        if (instance == null) {
+            instance = new InventoryStore();
+        }
+        return instance;
+    }
+
+    /**
+     * Registers {@code listener}. The store only holds it weakly; the caller keeps it reachable
+     * for as long as its view is alive.
+     */
+    void addListener(Consumer<InventoryChange> listener) {
+        listeners.add(new WeakReference<>(listener));
+    }
+
+    /** Stamp for {@link #intern}; take it before starting the query whose rows will be interned. */
+    long version() {
+        return version;
+    }
+
+    /**
+     * Shared instances for freshly read rows. A row read before the store applied a newer change to
+     * the same item ({@code readAt} older than that change) does not overwrite it.
+     */
+    List<FoodItem> intern(List<FoodItem> rows, long readAt) {
+        expunge();
+        List<FoodItem> shared = new ArrayList<>(rows.size());
+        for (FoodItem row : rows) {
+            Entry entry = items.get(row.getId());
+            FoodItem existing = entry == null ? null : entry.get();
+            if (existing == null) {
+                items.put(row.getId(), new Entry(row, collected, version));
+                shared.add(row);
+            } else {
+                if (entry.changedAt <= readAt) copy(row, existing);
+                shared.add(existing);
+            }
+        }
+        return shared;
+    }
+
+    // Writes; every view, including the caller's, follows through the change bus once they commit
+
+    CompletableFuture<Void> insertFoodItem(String name, String category, int quantity, String expiryDate) {
+        return AsyncRepository.insertFoodItem(name, category, quantity, expiryDate);
+    }
+
+    CompletableFuture<UpdateResult> updateFoodItem(int id, int expectedVersion, String name, String category,
+                                                   int quantityDelta, String expiryDate) {
+        return AsyncRepository.updateFoodItem(id, expectedVersion, name, category, quantityDelta, expiryDate);
+    }
+
+    CompletableFuture<Void> deleteFoodItem(int id) {
+        return AsyncRepository.deleteFoodItem(id);
+    }
+
+    CompletableFuture<Integer> deleteFoodItems(int[] ids) {
+        return AsyncRepository.deleteFoodItems(ids);
+    }
+
+    CompletableFuture<CartResult> placeOrderLines(String ngoUsername, List<OrderLine> lines, boolean partialFill, String orderDate) {
+        return AsyncRepository.placeOrderLines(ngoUsername, lines, partialFill, orderDate);
+    }
+
+    CompletableFuture<CartResult> placeProductOrders(String ngoUsername, List<OrderLine> lines, boolean partialFill, String orderDate) {
+        return AsyncRepository.placeProductOrders(ngoUsername, lines, partialFill, orderDate);
+    }
+
+    /** Tells every view to reload, e.g. after a bulk import changed more than is worth patching. */
+    void reloadAll() {
+        reloadPending = true;
+        sync();
+    }
+
+    /**
+     * Reads the rows changed since the last sync and publishes them. Overlapping calls coalesce;
+     * a failed sync is retried by the next one, since the cursor only moves on success.
+     */
+    void sync() {
+        if (syncing) {
+            syncAgain = true;
+            return;
+        }
+        syncing = true;
+        if (reloadPending || seq < 0) {
+            // Skip reading the rows themselves; every view reloads its own window anyway
+            reloadPending = false;
+            AsyncLoader.onFx(AsyncRepository.loadInventoryHead(), head -> {
+                seq = head.getSeq();
+                invalidate();
+                publish(InventoryChange.reload(seq));
+                finishSync();
+            }, e -> finishSync());
+            return;
+        }
+        long from = seq;
+        AsyncLoader.onFx(AsyncRepository.loadFoodItemChanges(from), changes -> {
+            apply(from, changes);
+            finishSync();
+        }, e -> finishSync());
+    }
+
+    private void finishSync() {
+        syncing = false;
+        if (syncAgain) {
+            syncAgain = false;
+            sync();
+        }
+    }
+
+    private void apply(long from, ChangeSet<FoodItem> changes) {
+        if (changes.isEmpty()) {
+            seq = changes.getSeq();
+            return;
+        }
+        version++;
+        seq = changes.getSeq();
+        if (!changes.isComplete()) {
+            invalidate();
+            publish(InventoryChange.reload(seq));
+            return;
+        }
+        List<FoodItem> changed = new ArrayList<>(changes.getChanged().size());
+        Map<Integer, FoodItem> previous = new HashMap<>();
+        for (FoodItem row : changes.getChanged()) {
+            Entry entry = items.get(row.getId());
+            FoodItem existing = entry == null ? null : entry.get();
+            if (existing == null) {
+                items.put(row.getId(), new Entry(row, collected, version));
+                changed.add(row);
+                continue;
+            }
+            previous.put(row.getId(), new FoodItem(existing.getId(), existing.getName(), existing.getCategory(),
+                    existing.getQuantity(), existing.getExpiryDate(), existing.getExpiryDay(), existing.getVersion()));
+            copy(row, existing);
+            entry.changedAt = version;
+            changed.add(existing);
+        }
+        for (int id : changes.getRemovedIds()) items.remove(id);
+        publish(new InventoryChange(false, from, seq, changed, changes.getRemovedIds(), previous));
+    }
+
+    /** Shared instances may be stale; let the rows reloading views read overwrite them. */
+    private void invalidate() {
+        version++;
+        items.values().forEach(entry -> entry.changedAt = -1);
+    }
+
+    private void publish(InventoryChange change) {
+        for (Iterator<WeakReference<Consumer<InventoryChange>>> it = listeners.iterator(); it.hasNext(); ) {
+            Consumer<InventoryChange> listener = it.next().get();
+            if (listener == null) it.remove();
+            else listener.accept(change);
+        }
+    }
+
+    private static void copy(FoodItem from, FoodItem to) {
+        if (!Objects.equals(from.getName(), to.getName())) to.setName(from.getName());
+        if (!Objects.equals(from.getCategory(), to.getCategory())) to.setCategory(from.getCategory());
+        if (from.getQuantity() != to.getQuantity()) to.setQuantity(from.getQuantity());
+        if (!Objects.equals(from.getExpiryDate(), to.getExpiryDate())) to.setExpiryDate(from.getExpiryDate());
+        to.setVersion(from.getVersion());
+    }
+
+    private void expunge() {
+        Object ref;
+        while ((ref = collected.poll()) != null) {
+            Entry entry = (Entry) ref;
+            items.remove(entry.id, entry);
+        }
+    }
+
+    private static final class Entry extends WeakReference<FoodItem> {
+        final int id;
+        long changedAt; // store version of the last change applied to this item
+
+        Entry(FoodItem item, ReferenceQueue<FoodItem> queue, long changedAt) {
+            super(item, queue);
+            this.id = item.getId();
+            this.changedAt = changedAt;
+        }
+    }
+}
@@ -1,6 +1,6 @@
 package controller;
 
-import database.DBUtil;
+import database.AsyncRepository;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
@@ -29,11 +29,14 @@ public class LoginController {
         if (username.isEmpty()) {
             username = role.equals("NGO") ? "ngo1" : "supplier1"; // simple default
         }
-        try {
-            DBUtil.ensureUser(username, role);
-        } catch (Exception ex) {
-            // ignore for simplicity
-        }
+        String user = username;
+        // Failures are ignored for simplicity; navigation happens either way
+        AsyncLoader.onFx(AsyncRepository.ensureUser(user, role),
+                ignored -> openDashboard(user, role),
+                ex -> openDashboard(user, role));
+    }
+
+    private void openDashboard(String username, String role) {
         Session.setCurrentUser(new User(username, role));
         try {
             String fxml = role.equals("NGO") ? "/NgoHome.fxml" : "/SupplierHome.fxml";
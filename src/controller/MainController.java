@@ -1,27 +1,25 @@
 package controller;
 
-import database.DBUtil;
+import database.AsyncRepository;
+import database.CsvExporter;
+import database.InventorySort;
+import javafx.animation.PauseTransition;
+import javafx.beans.binding.Bindings;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
 import javafx.scene.control.cell.PropertyValueFactory;
-import javafx.scene.paint.Color;
-import javafx.stage.FileChooser;
-import javafx.stage.Stage;
+import javafx.util.Duration;
 import model.FoodItem;
+import model.SearchIndex;
 
-import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.SQLException;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
-import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
 public class MainController {
     @FXML private TableView<FoodItem> tableView;
@@ -41,18 +39,46 @@ public class MainController {
     @FXML private Button editButton;
     @FXML private Button exportButton;
     @FXML private Button clearSearchButton;
+    @FXML private ProgressIndicator busyIndicator;
+    @FXML private ProgressBar exportProgress;
+    @FXML private Label alertLabel;
 
-    private final ObservableList<FoodItem> items = FXCollections.observableArrayList();
+    // Search results shown are capped; the unfiltered table pages through everything
+    private static final int SEARCH_LIMIT = 5000;
+    private static final Duration SEARCH_DEBOUNCE = Duration.millis(150);
+
+    private final PagedFoodItemList items = new PagedFoodItemList(InventorySort.NAME, true,
+            e -> showAlert("Database Error", "Failed to load items: " + e.getMessage()));
     private final ObservableList<FoodItem> filteredItems = FXCollections.observableArrayList();
+    private final AsyncLoader searchLoader = new AsyncLoader();
+    private final AsyncLoader indexLoader = new AsyncLoader();
+    private final AsyncLoader alertsLoader = new AsyncLoader();
+    private final InventoryStore store = InventoryStore.get();
+    private final Consumer<InventoryChange> inventoryListener = this::onInventoryChanged; // the store holds it weakly
+    private final PauseTransition searchDebounce = new PauseTransition(SEARCH_DEBOUNCE);
+    private SearchIndex searchIndex;          // null until the first background build finishes
+    private SearchIndex.Result lastSearch;    // hits behind filteredItems, for refining
+    private boolean lastSearchFullyLoaded;    // filteredItems holds every hit of lastSearch
+    private CsvExportTask exportTask;
     private FoodItem selectedItemForEdit = null;
+    // The row as the form was filled from it: updates are checked against its version, and the
+    // quantity typed is applied as a change from its quantity, so orders placed meanwhile still count
+    private int editVersion;
+    private int editQuantity;
 
     @FXML
     private void initialize() {
         setupTableColumns();
         setupTableRowFactory();
-        tableView.setItems(filteredItems);
+        tableView.setItems(items);
+        items.bindSorting(tableView, InventorySort.NAME, true);
         setupSearchFunctionality();
+        if (busyIndicator != null) {
+            busyIndicator.visibleProperty().bind(items.busyProperty().or(searchLoader.runningProperty()));
+        }
+        store.addListener(inventoryListener);
         refreshTable();
+        loadSearchIndex();
     }
 
     private void setupTableColumns() {
@@ -64,77 +90,112 @@ public class MainController {
     }
     
     private void setupTableRowFactory() {
-        tableView.setRowFactory(tv -> {
-            TableRow<FoodItem> row = new TableRow<>();
-            row.itemProperty().addListener((obs, oldItem, newItem) -> {
-                if (newItem == null) {
-                    row.setStyle("");
-                } else {
-                    // Check for expiry alerts (within 7 days)
-                    LocalDate today = LocalDate.now();
-                    LocalDate expiryDate = parseDate(newItem.getExpiryDate());
-                    
-                    if (expiryDate != null) {
-                        long daysUntilExpiry = ChronoUnit.DAYS.between(today, expiryDate);
-                        
-                        if (daysUntilExpiry <= 0) {
-                            // Expired items - dark red
-                            row.setStyle("-fx-background-color: #ffcccb; -fx-text-fill: #8b0000;");
-                        } else if (daysUntilExpiry <= 7) {
-                            // Expiring soon - light red
-                            row.setStyle("-fx-background-color: #ffe4e1; -fx-text-fill: #dc143c;");
-                        } else if (newItem.getQuantity() < 10) {
-                            // Low stock - orange
-                            row.setStyle("-fx-background-color: #ffeaa7; -fx-text-fill: #e17055;");
-                        } else {
-                            row.setStyle("");
-                        }
-                    } else if (newItem.getQuantity() < 10) {
-                        // Low stock - orange
-                        row.setStyle("-fx-background-color: #ffeaa7; -fx-text-fill: #e17055;");
-                    } else {
-                        row.setStyle("");
-                    }
-                }
-            });
-            return row;
-        });
+        StockStatusRow.install(tableView, this::refreshAlerts);
     }
     
     private void setupSearchFunctionality() {
         if (searchField != null) {
+            searchDebounce.setOnFinished(e -> filterItems(searchField.getText()));
             searchField.textProperty().addListener((observable, oldValue, newValue) -> {
-                filterItems(newValue);
+                searchDebounce.playFromStart();
             });
         }
     }
     
     private void filterItems(String searchTerm) {
-        filteredItems.clear();
         if (searchTerm == null || searchTerm.trim().isEmpty()) {
-            filteredItems.addAll(items);
-        } else {
-            String lowerCaseFilter = searchTerm.toLowerCase();
-            for (FoodItem item : items) {
-                if (item.getName().toLowerCase().contains(lowerCaseFilter) ||
-                    item.getCategory().toLowerCase().contains(lowerCaseFilter)) {
-                    filteredItems.add(item);
-                }
-            }
+            searchLoader.cancel();
+            lastSearch = null;
+            filteredItems.clear();
+            tableView.setItems(items);
+            return;
+        }
+        if (searchIndex == null) {
+            // Index still building: let the database answer meanwhile
+            long readAt = store.version();
+            searchLoader.submit(() -> AsyncRepository.searchFoodItems(searchTerm.trim(), SEARCH_LIMIT), results -> {
+                lastSearch = null;
+                filteredItems.setAll(store.intern(results, readAt));
+                tableView.setItems(filteredItems);
+            }, e -> showAlert("Database Error", "Search failed: " + e.getMessage()));
+            return;
         }
+        SearchIndex.Result previous = lastSearch;
+        SearchIndex.Result result = searchIndex.search(searchTerm, previous);
+        lastSearch = result;
+        if (lastSearchFullyLoaded && result.narrows(previous)) {
+            // Narrowed query: every hit is already on screen, just drop the ones that no longer match
+            Set<Integer> keep = new HashSet<>();
+            for (int id : result.getIds()) keep.add(id);
+            filteredItems.removeIf(item -> !keep.contains(item.getId()));
+            tableView.setItems(filteredItems);
+            return;
+        }
+        int[] ids = result.count() > SEARCH_LIMIT ? Arrays.copyOf(result.getIds(), SEARCH_LIMIT) : result.getIds();
+        lastSearchFullyLoaded = false;
+        long readAt = store.version();
+        searchLoader.submit(() -> AsyncRepository.loadFoodItemsByIds(ids), rows -> {
+            filteredItems.setAll(store.intern(rows, readAt));
+            lastSearchFullyLoaded = result.count() <= SEARCH_LIMIT;
+            tableView.setItems(filteredItems);
+        }, e -> showAlert("Database Error", "Search failed: " + e.getMessage()));
     }
-    
-    private LocalDate parseDate(String dateStr) {
-        if (dateStr == null || dateStr.trim().isEmpty()) {
-            return null;
+
+    private void loadSearchIndex() {
+        indexLoader.submit(AsyncRepository::loadSearchIndex, index -> {
+            searchIndex = index;
+            lastSearch = null;
+            refilter();
+            syncSearchIndex(); // catch up with changes published while it was building
+        }, e -> showAlert("Database Error", "Failed to build search index: " + e.getMessage()));
+    }
+
+    /** Brings the search index up to date with rows changed since it was built or last synced. */
+    private void syncSearchIndex() {
+        if (searchIndex == null) return;
+        SearchIndex index = searchIndex;
+        indexLoader.submit(() -> AsyncRepository.loadFoodItemChanges(index.getSeq()), changes -> {
+            if (!changes.isComplete()) {
+                loadSearchIndex();
+                return;
+            }
+            if (changes.isEmpty()) return;
+            for (int id : changes.getRemovedIds()) index.remove(id);
+            for (FoodItem item : changes.getChanged()) index.put(item.getId(), item.getName(), item.getCategory());
+            index.setSeq(changes.getSeq());
+            index.compactIfNeeded();
+            lastSearch = null;
+            refilter();
+        }, e -> showAlert("Database Error", "Failed to update search index: " + e.getMessage()));
+    }
+
+    /** Keeps alerts and the search index in step with inventory writes made from any view. */
+    private void onInventoryChanged(InventoryChange change) {
+        refreshAlerts();
+        if (searchIndex == null) return;
+        if (change.isReload()) {
+            loadSearchIndex();
+            return;
         }
-        try {
-            return LocalDate.parse(dateStr);
-        } catch (Exception e) {
-            return null;
+        if (searchIndex.getSeq() < change.getFromSeq()) {
+            syncSearchIndex(); // missed an earlier change; read the gap
+            return;
         }
+        for (int id : change.getRemovedIds()) searchIndex.remove(id);
+        for (FoodItem item : change.getChanged()) searchIndex.put(item.getId(), item.getName(), item.getCategory());
+        searchIndex.setSeq(Math.max(searchIndex.getSeq(), change.getSeq()));
+        searchIndex.compactIfNeeded();
+        lastSearch = null;
+        refilter();
     }
 
+    private void refilter() {
+        String currentSearch = searchField != null ? searchField.getText() : "";
+        if (currentSearch != null && !currentSearch.trim().isEmpty()) {
+            filterItems(currentSearch);
+        }
+    }
+    
     @FXML
     private void handleAdd() {
         String name = nameField.getText() == null ? "" : nameField.getText().trim();
@@ -170,23 +231,47 @@ public class MainController {
             }
         }
 
-        try (Connection connection = DBUtil.getConnection()) {
-            if (selectedItemForEdit != null) {
-                // Update existing item
-                DBUtil.updateFoodItem(connection, selectedItemForEdit.getId(), name, category, quantity, expiry);
-                selectedItemForEdit = null;
-                addButton.setText("Add");
-            } else {
-                // Insert new item
-                DBUtil.insertFoodItem(connection, name, category, quantity, expiry);
-            }
-        } catch (SQLException e) {
-            showAlert("Database Error", "Failed to save item: " + e.getMessage());
+        addButton.setDisable(true);
+        if (selectedItemForEdit != null) {
+            int quantityDelta = quantity - editQuantity;
+            AsyncLoader.onFx(store.updateFoodItem(selectedItemForEdit.getId(), editVersion, name, category, quantityDelta, expiry), result -> {
+                addButton.setDisable(false);
+                if (result.isApplied()) {
+                    clearInputFields();
+                } else {
+                    showConflict(result.getCurrent(), quantityDelta);
+                }
+            }, e -> {
+                addButton.setDisable(false);
+                showAlert("Database Error", "Failed to save item: " + e.getMessage());
+            });
             return;
         }
+        AsyncLoader.onFx(store.insertFoodItem(name, category, quantity, expiry), ignored -> {
+            addButton.setDisable(false);
+            clearInputFields();
+        }, e -> {
+            addButton.setDisable(false);
+            showAlert("Database Error", "Failed to save item: " + e.getMessage());
+        });
+    }
 
-        clearInputFields();
-        refreshTable();
+    /** An update was refused: say why and, unless the item is gone, refill the form from the current row. */
+    private void showConflict(FoodItem current, int quantityDelta) {
+        if (current == null) {
+            clearInputFields();
+            showAlert("Update Conflict", "This item was deleted by someone else; nothing was saved.");
+            return;
+        }
+        if (current.getVersion() == editVersion) {
+            // Same edit, but orders took stock meanwhile: the decrease no longer fits
+            showAlert("Update Conflict", "Only " + current.getQuantity() + " left in stock, so the quantity cannot go down by " +
+                    -quantityDelta + ". Nothing was saved.");
+        } else {
+            showAlert("Update Conflict", "This item was changed by someone else while you were editing it. " +
+                    "The form now shows the current values; nothing was saved.");
+        }
+        fillForm(current);
     }
 
     @FXML
@@ -205,12 +290,8 @@ public class MainController {
         
         Optional<ButtonType> result = confirmAlert.showAndWait();
         if (result.isPresent() && result.get() == ButtonType.OK) {
-            try (Connection connection = DBUtil.getConnection()) {
-                DBUtil.deleteFoodItemById(connection, selected.getId());
-                refreshTable();
-            } catch (SQLException e) {
-                showAlert("Database Error", "Failed to delete item: " + e.getMessage());
-            }
+            AsyncLoader.onFx(store.deleteFoodItem(selected.getId()), ignored -> { },
+                    e -> showAlert("Database Error", "Failed to delete item: " + e.getMessage()));
         }
     }
     
@@ -222,15 +303,19 @@ public class MainController {
             return;
         }
         
-        // Populate fields with selected item data
-        nameField.setText(selected.getName());
-        categoryField.setText(selected.getCategory());
-        quantityField.setText(String.valueOf(selected.getQuantity()));
-        expiryDateField.setText(selected.getExpiryDate());
-        
+        fillForm(selected);
         selectedItemForEdit = selected;
         addButton.setText("Update");
     }
+
+    private void fillForm(FoodItem item) {
+        nameField.setText(item.getName());
+        categoryField.setText(item.getCategory());
+        quantityField.setText(String.valueOf(item.getQuantity()));
+        expiryDateField.setText(item.getExpiryDate());
+        editVersion = item.getVersion();
+        editQuantity = item.getQuantity();
+    }
     
     @FXML
     private void handleClearSearch() {
@@ -241,79 +326,38 @@ public class MainController {
     
     @FXML
     private void handleExport() {
-        FileChooser fileChooser = new FileChooser();
-        fileChooser.setTitle("Export Inventory Data");
-        fileChooser.getExtensionFilters().add(
-            new FileChooser.ExtensionFilter("CSV Files", "*.csv")
-        );
-        fileChooser.setInitialFileName("food_inventory_" + LocalDate.now() + ".csv");
-        
-        Stage stage = (Stage) tableView.getScene().getWindow();
-        File file = fileChooser.showSaveDialog(stage);
-        
-        if (file != null) {
-            exportToCSV(file);
+        if (exportTask != null && exportTask.isRunning()) {
+            exportTask.cancel();
+            return;
         }
-    }
-    
-    private void exportToCSV(File file) {
-        try (FileWriter writer = new FileWriter(file)) {
-            // Write header
-            writer.append("ID,Name,Category,Quantity,Expiry Date,Status\n");
-            
-            // Write data
-            LocalDate today = LocalDate.now();
-            for (FoodItem item : items) {
-                writer.append(String.valueOf(item.getId())).append(",");
-                writer.append(item.getName()).append(",");
-                writer.append(item.getCategory()).append(",");
-                writer.append(String.valueOf(item.getQuantity())).append(",");
-                writer.append(item.getExpiryDate()).append(",");
-                
-                // Add status based on expiry and quantity
-                LocalDate expiryDate = parseDate(item.getExpiryDate());
-                String status = "Normal";
-                if (expiryDate != null) {
-                    long daysUntilExpiry = ChronoUnit.DAYS.between(today, expiryDate);
-                    if (daysUntilExpiry <= 0) {
-                        status = "Expired";
-                    } else if (daysUntilExpiry <= 7) {
-                        status = "Expiring Soon";
-                    }
-                }
-                if (item.getQuantity() < 10) {
-                    status += (status.equals("Normal") ? "Low Stock" : ", Low Stock");
-                }
-                
-                writer.append(status).append("\n");
-            }
-            
-            showAlert("Export Successful", "Data exported to: " + file.getAbsolutePath());
-        } catch (IOException e) {
-            showAlert("Export Error", "Failed to export data: " + e.getMessage());
+        CsvExportTask task = CsvExportTask.start(tableView.getScene().getWindow(), CsvExporter.Kind.INVENTORY, null);
+        if (task == null) return;
+        exportTask = task;
+        if (exportProgress != null) {
+            exportProgress.progressProperty().bind(task.progressProperty());
+            exportProgress.visibleProperty().bind(task.runningProperty());
+        }
+        if (exportButton != null) {
+            exportButton.textProperty().bind(Bindings.when(task.runningProperty()).then("Cancel Export").otherwise("Export"));
         }
+        task.setOnSucceeded(e -> showAlert("Export Successful",
+                task.getValue() + " rows exported to: " + task.getFile().getAbsolutePath()));
+        task.setOnFailed(e -> showAlert("Export Error", "Failed to export data: " + task.getException().getMessage()));
     }
 
     private void refreshTable() {
-        items.clear();
-        try (Connection connection = DBUtil.getConnection(); 
-             PreparedStatement statement = connection.prepareStatement(
-                 "SELECT id, name, category, quantity, expiry_date FROM food_items ORDER BY name");
-             ResultSet rs = statement.executeQuery()) {
-            while (rs.next()) {
-                int id = rs.getInt("id");
-                String name = rs.getString("name");
-                String category = rs.getString("category");
-                int quantity = rs.getInt("quantity");
-                String expiry = rs.getString("expiry_date");
-                items.add(new FoodItem(id, name, category, quantity, expiry));
-            }
-            // Update filtered items
-            String currentSearch = searchField != null ? searchField.getText() : "";
-            filterItems(currentSearch);
-        } catch (SQLException e) {
-            showAlert("Database Error", "Failed to load items: " + e.getMessage());
-        }
+        items.refresh();
+        refreshAlerts();
+        // Update filtered items
+        String currentSearch = searchField != null ? searchField.getText() : "";
+        filterItems(currentSearch);
+    }
+
+    /** Expiry and low-stock counts come from index range scans, not from the loaded rows. */
+    private void refreshAlerts() {
+        if (alertLabel == null) return;
+        alertsLoader.submit(AsyncRepository::loadStockAlerts, alerts -> alertLabel.setText(alerts.summary()),
+                e -> alertLabel.setText(""));
     }
 
     private void clearInputFields() {
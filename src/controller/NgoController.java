@@ -1,6 +1,12 @@
 package controller;
 
-import database.DBUtil;
+import database.AsyncRepository;
+import database.ChangeBus;
+import database.InventorySort;
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
+import javafx.beans.binding.Bindings;
+import javafx.beans.property.ReadOnlyStringWrapper;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
@@ -10,20 +16,29 @@ import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 import model.FoodItem;
 import model.Order;
+import model.OrderLine;
+import model.PrefixIndex;
 import model.Session;
 
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.SQLException;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 public class NgoController {
-    @FXML private ComboBox<String> itemChoice;
+    @FXML private TextField itemFilter;
+    @FXML private ComboBox<FoodItem> itemChoice;
     @FXML private TextField qtyField;
+    @FXML private ListView<OrderLine> cartList;
+    @FXML private CheckBox partialFillCheck;
+    @FXML private CheckBox soonestExpiryCheck;
     @FXML private Label statusLabel;
+    @FXML private ProgressIndicator busyIndicator;
+    @FXML private Label alertLabel;
 
     @FXML private TableView<FoodItem> inventoryTable;
     @FXML private TableColumn<FoodItem, String> invColName;
@@ -36,9 +51,39 @@ public class NgoController {
     @FXML private TableColumn<Order, String> ordColItem;
     @FXML private TableColumn<Order, Integer> ordColQty;
     @FXML private TableColumn<Order, String> ordColDate;
+    @FXML private TableColumn<Order, String> ordColStatus;
+    @FXML private CheckBox historyCheck;
 
-    private final ObservableList<FoodItem> inventory = FXCollections.observableArrayList();
+    // The order picker lists this many items whose name starts with what was typed, in stock first
+    private static final int CHOICE_LIMIT = 50;
+    private static final Duration FILTER_DEBOUNCE = Duration.millis(120);
+    // Most recent orders listed when completed ones are shown too
+    private static final int HISTORY_LIMIT = 500;
+
+    private final PagedFoodItemList inventory = new PagedFoodItemList(InventorySort.NAME, true,
+            e -> statusLabel.setText("DB error: " + e.getMessage()));
     private final ObservableList<Order> myOrders = FXCollections.observableArrayList();
+    private final ObservableList<Order> orderHistory = FXCollections.observableArrayList();
+    private final ObservableList<OrderLine> cart = FXCollections.observableArrayList();
+    private final AsyncLoader choicesLoader = new AsyncLoader();
+    private final AsyncLoader indexLoader = new AsyncLoader();
+    private final AsyncLoader alertsLoader = new AsyncLoader();
+    private final AsyncLoader historyLoader = new AsyncLoader();
+    private final PauseTransition filterDebounce = new PauseTransition(FILTER_DEBOUNCE);
+    private PrefixIndex choiceIndex; // null until the first background build finishes
+    private final InventoryStore store = InventoryStore.get();
+    private final Consumer<InventoryChange> inventoryListener = this::onInventoryChanged; // the store holds it weakly
+    private OrderListSync ordersSync;
+    // History has no change cursor of its own; while shown it reloads on every order change
+    private final AtomicBoolean historyReloadQueued = new AtomicBoolean();
+    private final ChangeBus.Listener historyListener = (topics, external) -> { // the bus holds it weakly
+        if (topics.contains(ChangeBus.Topic.ORDERS) && historyReloadQueued.compareAndSet(false, true)) {
+            Platform.runLater(() -> {
+                historyReloadQueued.set(false);
+                if (historyCheck.isSelected()) loadHistory();
+            });
+        }
+    };
 
     @FXML
     private void initialize() {
@@ -47,88 +92,225 @@ public class NgoController {
         invColQty.setCellValueFactory(new PropertyValueFactory<>("quantity"));
         invColExpiry.setCellValueFactory(new PropertyValueFactory<>("expiryDate"));
         inventoryTable.setItems(inventory);
+        StockStatusRow.install(inventoryTable, this::refreshAlerts);
+        inventory.bindSorting(inventoryTable, InventorySort.NAME, true);
 
         ordColId.setCellValueFactory(new PropertyValueFactory<>("id"));
         ordColItem.setCellValueFactory(new PropertyValueFactory<>("itemName"));
         ordColQty.setCellValueFactory(new PropertyValueFactory<>("quantity"));
         ordColDate.setCellValueFactory(new PropertyValueFactory<>("orderDate"));
+        ordColStatus.setCellValueFactory(c -> new ReadOnlyStringWrapper(c.getValue().isCompleted() ? "Completed" : "Pending"));
         ordersTable.setItems(myOrders);
+        cartList.setItems(cart);
+        itemChoice.setCellFactory(list -> new ListCell<FoodItem>() {
+            @Override
+            protected void updateItem(FoodItem item, boolean empty) {
+                super.updateItem(item, empty);
+                textProperty().unbind();
+                if (empty || item == null) {
+                    setText(null);
+                    return;
+                }
+                // Bound, since a re-listed shared instance does not refresh its cell
+                textProperty().bind(Bindings.createStringBinding(() -> item.getId() + ": " + item.getName() +
+                        (item.getQuantity() > 0 ? " (" + item.getQuantity() + ")" : " (out of stock)"),
+                        item.nameProperty(), item.quantityProperty()));
+            }
+        });
+        itemChoice.setButtonCell(itemChoice.getCellFactory().call(null));
+        filterDebounce.setOnFinished(e -> refreshChoices());
+        itemFilter.textProperty().addListener((observable, oldValue, newValue) -> filterDebounce.playFromStart());
+        itemFilter.setOnAction(e -> qtyField.requestFocus()); // Enter keeps the top match
+        ordersSync = new OrderListSync(myOrders, Session.getCurrentUser().getUsername(), e -> statusLabel.setText("DB error: " + e.getMessage()));
 
+        busyIndicator.visibleProperty().bind(inventory.busyProperty().or(choicesLoader.runningProperty()).or(ordersSync.runningProperty()));
+
+        store.addListener(inventoryListener);
+        ChangeBus.subscribe(historyListener);
         refreshInventory();
         refreshOrders();
-        refreshChoiceBox();
+        loadChoiceIndex();
     }
 
     private void refreshInventory() {
-        inventory.clear();
-        try (Connection c = DBUtil.getConnection();
-             PreparedStatement ps = c.prepareStatement("SELECT id, name, category, quantity, expiry_date FROM food_items ORDER BY name");
-             ResultSet rs = ps.executeQuery()) {
-            while (rs.next()) {
-                inventory.add(new FoodItem(
-                        rs.getInt("id"),
-                        rs.getString("name"),
-                        rs.getString("category"),
-                        rs.getInt("quantity"),
-                        rs.getString("expiry_date")
-                ));
-            }
-        } catch (SQLException e) {
-            statusLabel.setText("DB error: " + e.getMessage());
-        }
+        inventory.refresh();
+        refreshChoices();
+        refreshAlerts();
+    }
+
+    private void refreshAlerts() {
+        alertsLoader.submit(AsyncRepository::loadStockAlerts, alerts -> alertLabel.setText(alerts.summary()),
+                e -> alertLabel.setText(""));
     }
 
     private void refreshOrders() {
-        myOrders.clear();
-        try (Connection c = DBUtil.getConnection();
-             ResultSet rs = DBUtil.selectOrdersForNgo(c, Session.getCurrentUser().getUsername())) {
-            while (rs.next()) {
-                myOrders.add(new Order(
-                        rs.getInt("id"),
-                        rs.getString("ngo_username"),
-                        rs.getInt("item_id"),
-                        rs.getString("item_name"),
-                        rs.getInt("quantity"),
-                        rs.getString("order_date")
-                ));
-            }
-        } catch (SQLException e) {
-            statusLabel.setText("DB error: " + e.getMessage());
+        ordersSync.reload();
+    }
+
+    /** Switches the orders table between the live pending list and the full history, archive included. */
+    @FXML
+    private void handleToggleHistory() {
+        if (!historyCheck.isSelected()) {
+            historyLoader.cancel();
+            ordersTable.setItems(myOrders);
+            return;
+        }
+        loadHistory();
+    }
+
+    private void loadHistory() {
+        historyLoader.submit(() -> AsyncRepository.loadOrderHistory(Session.getCurrentUser().getUsername(), Integer.MAX_VALUE, HISTORY_LIMIT),
+                orders -> {
+                    orderHistory.setAll(orders);
+                    ordersTable.setItems(orderHistory);
+                }, e -> statusLabel.setText("DB error: " + e.getMessage()));
+    }
+
+    /** Lists the items matching the filter text, from the prefix index once it is built. */
+    private void refreshChoices() {
+        String typed = itemFilter.getText() == null ? "" : itemFilter.getText().trim();
+        long readAt = store.version();
+        if (choiceIndex == null) {
+            // Index still building: let the database answer meanwhile
+            choicesLoader.submit(() -> typed.isEmpty()
+                    ? AsyncRepository.loadInStockFoodItems(CHOICE_LIMIT)
+                    : AsyncRepository.searchFoodItems(typed, CHOICE_LIMIT),
+                    items -> showChoices(store.intern(items, readAt)),
+                    e -> statusLabel.setText("DB error: " + e.getMessage()));
+            return;
         }
+        int[] ids = choiceIndex.search(typed, CHOICE_LIMIT);
+        choicesLoader.submit(() -> AsyncRepository.loadFoodItemsByIds(ids), items -> showChoices(store.intern(items, readAt)),
+                e -> statusLabel.setText("DB error: " + e.getMessage()));
+    }
+
+    private void loadChoiceIndex() {
+        indexLoader.submit(AsyncRepository::loadPrefixIndex, index -> {
+            choiceIndex = index;
+            refreshChoices();
+            syncChoiceIndex(); // catch up with changes published while it was building
+        }, e -> statusLabel.setText("DB error: " + e.getMessage()));
+    }
+
+    /** Brings the prefix index up to date with rows changed since it was built or last synced. */
+    private void syncChoiceIndex() {
+        if (choiceIndex == null) return;
+        PrefixIndex index = choiceIndex;
+        indexLoader.submit(() -> AsyncRepository.loadFoodItemChanges(index.getSeq()), changes -> {
+            if (!changes.isComplete()) {
+                loadChoiceIndex();
+                return;
+            }
+            if (changes.isEmpty()) return;
+            for (int id : changes.getRemovedIds()) index.remove(id);
+            for (FoodItem item : changes.getChanged()) index.put(item.getId(), item.getName(), item.getQuantity());
+            index.setSeq(changes.getSeq());
+            refreshChoices();
+        }, e -> statusLabel.setText("DB error: " + e.getMessage()));
     }
 
-    private void refreshChoiceBox() {
-        itemChoice.getItems().clear();
-        for (FoodItem fi : inventory) {
-            itemChoice.getItems().add(fi.getId() + ": " + fi.getName());
+    /** Keeps the alerts, the prefix index and the listed matches in step with writes made in any view. */
+    private void onInventoryChanged(InventoryChange change) {
+        refreshAlerts();
+        if (choiceIndex == null) {
+            refreshChoices();
+            return;
+        }
+        if (change.isReload()) {
+            loadChoiceIndex();
+            return;
         }
-        if (!itemChoice.getItems().isEmpty()) itemChoice.getSelectionModel().selectFirst();
+        if (choiceIndex.getSeq() < change.getFromSeq()) {
+            syncChoiceIndex(); // missed an earlier change; read the gap
+            return;
+        }
+        for (int id : change.getRemovedIds()) choiceIndex.remove(id);
+        for (FoodItem item : change.getChanged()) choiceIndex.put(item.getId(), item.getName(), item.getQuantity());
+        choiceIndex.setSeq(Math.max(choiceIndex.getSeq(), change.getSeq()));
+        refreshChoices();
+    }
+
+    private void showChoices(List<FoodItem> matches) {
+        // Items are the store's shared instances, so the selection survives by identity
+        FoodItem selected = itemChoice.getValue();
+        itemChoice.getItems().setAll(matches);
+        if (selected != null && matches.contains(selected)) itemChoice.setValue(selected);
+        else if (!matches.isEmpty()) itemChoice.getSelectionModel().selectFirst();
+        else itemChoice.setValue(null);
+    }
+
+    /** The picked item and quantity as an order line, or null (with the reason shown) if invalid. */
+    private OrderLine selectedLine() {
+        FoodItem selected = itemChoice.getValue();
+        if (selected == null) { statusLabel.setText("Select an item"); return null; }
+        int qty;
+        try { qty = Integer.parseInt(qtyField.getText()); } catch (Exception ex) { statusLabel.setText("Invalid qty"); return null; }
+        if (qty <= 0) { statusLabel.setText("Qty must be > 0"); return null; }
+        return new OrderLine(selected.getId(), selected.getName(), qty);
+    }
+
+    @FXML
+    private void handleAddToCart() {
+        OrderLine line = selectedLine();
+        if (line == null) return;
+        cart.add(line);
+        qtyField.clear();
+        statusLabel.setText(cart.size() + " line(s) in cart");
+    }
+
+    @FXML
+    private void handleRemoveCartLine() {
+        int index = cartList.getSelectionModel().getSelectedIndex();
+        if (index >= 0) cart.remove(index);
     }
 
+    @FXML
+    private void handleClearCart() {
+        cart.clear();
+    }
+
+    /**
+     * Orders the whole cart in one transaction, or just the picked item when the cart is empty. With
+     * "soonest expiry first" a line stands for its product, taken from whichever lots expire first.
+     */
     @FXML
     private void handlePlaceOrder() {
-        String selected = itemChoice.getValue();
-        if (selected == null) { statusLabel.setText("Select an item"); return; }
-        int idx = selected.indexOf(":");
-        int itemId = Integer.parseInt(selected.substring(0, idx));
-        String itemName = selected.substring(idx + 2);
-        int qty;
-        try { qty = Integer.parseInt(qtyField.getText()); } catch (Exception ex) { statusLabel.setText("Invalid qty"); return; }
-        if (qty <= 0) { statusLabel.setText("Qty must be > 0"); return; }
-        try {
-            DBUtil.insertOrderAndDecrementStock(Session.getCurrentUser().getUsername(), itemId, itemName, qty, LocalDate.now().toString());
-            statusLabel.setText("Order placed");
-            refreshInventory();
-            refreshChoiceBox();
-            refreshOrders();
-        } catch (SQLException e) {
-            statusLabel.setText("Order failed: " + e.getMessage());
+        List<OrderLine> lines = new ArrayList<>(cart);
+        if (lines.isEmpty()) {
+            OrderLine line = selectedLine();
+            if (line == null) return;
+            lines.add(line);
         }
+        boolean partialFill = partialFillCheck.isSelected();
+        statusLabel.setText("Placing order...");
+        String ngo = Session.getCurrentUser().getUsername();
+        String today = LocalDate.now().toString();
+        AsyncLoader.onFx(soonestExpiryCheck.isSelected()
+                        ? store.placeProductOrders(ngo, lines, partialFill, today)
+                        : store.placeOrderLines(ngo, lines, partialFill, today),
+                result -> {
+                    if (result.getPlaced().isEmpty()) {
+                        statusLabel.setText("Order failed: " + String.join("; ", result.getProblems()));
+                        return;
+                    }
+                    cart.clear();
+                    String placed = "Order placed (" + result.getPlaced().size() + " lot(s))";
+                    // Stock and order views follow through the change bus
+                    statusLabel.setText(result.isComplete() ? placed : placed + "; " + String.join("; ", result.getProblems()));
+                },
+                e -> statusLabel.setText("Order failed: " + e.getMessage()));
     }
 
     @FXML
     private void handleLogout() {
         try {
+            filterDebounce.stop();
+            choicesLoader.cancel();
+            indexLoader.cancel();
+            alertsLoader.cancel();
+            historyLoader.cancel();
+            ChangeBus.unsubscribe(historyListener);
+            ordersSync.cancel();
             model.Session.setCurrentUser(null);
             Parent root = FXMLLoader.load(getClass().getResource("/Login.fxml"));
             Stage stage = (Stage) statusLabel.getScene().getWindow();
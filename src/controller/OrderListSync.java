@@ -0,0 +1,109 @@
+package controller;
+
+import database.AsyncRepository;
+import database.ChangeBus;
+import database.ChangeSet;
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.collections.ObservableList;
+import model.Order;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Keeps a view's list of pending orders (newest first) in step with the database by applying
+ * only the orders that changed since the last sync, instead of clearing and reloading it.
+ * Syncs by itself whenever {@link ChangeBus} reports an order change, local or external.
+ */
+final class OrderListSync {
+    private final ObservableList<Order> orders;
+    private final String ngoUsername; // null = orders of every NGO
+    private final Consumer<Throwable> onError;
+    private final AsyncLoader loader = new AsyncLoader();
+    private long syncedSeq = -1;
+    private final AtomicBoolean syncQueued = new AtomicBoolean();
+    private final ChangeBus.Listener busListener = (topics, external) -> {
+        if (topics.contains(ChangeBus.Topic.ORDERS) && syncQueued.compareAndSet(false, true)) {
+            Platform.runLater(() -> {
+                syncQueued.set(false);
+                sync();
+            });
+        }
+    };
+
+    OrderListSync(ObservableList<Order> orders, String ngoUsername, Consumer<Throwable> onError) {
+        this.orders = orders;
+        this.ngoUsername = ngoUsername;
+        this.onError = onError;
+        ChangeBus.subscribe(busListener);
+    }
+
+    /** Full reload; used for the first load and when the change log no longer covers our cursor. */
+    void reload() {
+        loader.submit(() -> AsyncRepository.loadPendingOrders(ngoUsername), snapshot -> {
+            orders.setAll(snapshot.getChanged());
+            syncedSeq = snapshot.getSeq();
+        }, onError);
+    }
+
+    void sync() {
+        if (syncedSeq < 0) {
+            reload();
+            return;
+        }
+        loader.submit(() -> AsyncRepository.loadOrderChanges(syncedSeq, ngoUsername), this::apply, onError);
+    }
+
+    /** Stops syncing for good; used when the view goes away. */
+    void cancel() {
+        ChangeBus.unsubscribe(busListener);
+        loader.cancel();
+    }
+
+    ReadOnlyBooleanProperty runningProperty() {
+        return loader.runningProperty();
+    }
+
+    private void apply(ChangeSet<Order> changes) {
+        if (!changes.isComplete()) {
+            reload();
+            return;
+        }
+        if (!changes.getRemovedIds().isEmpty()) {
+            orders.removeIf(o -> changes.getRemovedIds().contains(o.getId()));
+        }
+        List<Order> changed = changes.getChanged();
+        if (!changed.isEmpty()) {
+            Map<Integer, Integer> positions = new HashMap<>();
+            for (int i = 0; i < orders.size(); i++) {
+                positions.put(orders.get(i).getId(), i);
+            }
+            List<Order> added = new ArrayList<>();
+            for (Order order : changed) {
+                Integer at = positions.get(order.getId());
+                if (at != null) orders.set(at, order);
+                else added.add(order);
+            }
+            for (Order order : added) {
+                insertNewestFirst(order);
+            }
+        }
+        syncedSeq = changes.getSeq();
+    }
+
+    private void insertNewestFirst(Order order) {
+        // The list is ordered by id descending, so binary search for the insertion point
+        int low = 0, high = orders.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (orders.get(mid).getId() > order.getId()) low = mid + 1;
+            else high = mid;
+        }
+        orders.add(low, order);
+    }
+}
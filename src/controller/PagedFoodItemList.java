@@ -0,0 +1,228 @@
+package controller;
+
+import database.AsyncRepository;
+import database.InventorySort;
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyBooleanWrapper;
+import javafx.collections.ObservableListBase;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.scene.control.cell.PropertyValueFactory;
+import model.FoodItem;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Virtual list over the whole food_items table for a TableView.
+ *
+ * The list reports the full row count, but only materializes the pages the table actually
+ * asks for, fetched in the background with keyset pagination on (sort expression, id).
+ * At most {@link #MAX_PAGES} pages are kept; older ones are dropped and re-fetched on demand.
+ * Rows that are not loaded yet read as {@code null}, which the table renders as empty rows.
+ * Loaded rows are the shared {@link InventoryStore} instances, and the list follows the store's
+ * change events. Must only be used from the FX thread.
+ */
+final class PagedFoodItemList extends ObservableListBase<FoodItem> {
+    static final int PAGE_SIZE = 200;
+    static final int MAX_PAGES = 10;
+
+    private final Map<Integer, List<FoodItem>> pages = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, List<FoodItem>> eldest) {
+            return size() > MAX_PAGES;
+        }
+    };
+    // Sort key and id of the last row of every page seen so far; lets the next page resume by keyset
+    // even after eviction. Copied, since the shared rows change in place
+    private final Map<Integer, Object[]> pageEnds = new HashMap<>();
+    private final Set<Integer> loading = new HashSet<>();
+    private final ReadOnlyBooleanWrapper busy = new ReadOnlyBooleanWrapper(false);
+    private final Consumer<Throwable> onError;
+    private final InventoryStore store = InventoryStore.get();
+    private final Consumer<InventoryChange> storeListener = this::apply; // the store holds it weakly
+
+    private InventorySort sort;
+    private boolean ascending;
+    private int size;
+    private int maxId;       // highest id at the last full refresh; anything above it is an insert
+    private long generation;
+
+    PagedFoodItemList(InventorySort sort, boolean ascending, Consumer<Throwable> onError) {
+        this.sort = sort;
+        this.ascending = ascending;
+        this.onError = onError;
+        store.addListener(storeListener);
+    }
+
+    @Override
+    public FoodItem get(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException(index);
+        int page = index / PAGE_SIZE;
+        List<FoodItem> rows = pages.get(page);
+        if (rows == null) {
+            requestPage(page);
+            return null;
+        }
+        int offset = index % PAGE_SIZE;
+        return offset < rows.size() ? rows.get(offset) : null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    ReadOnlyBooleanProperty busyProperty() {
+        return busy.getReadOnlyProperty();
+    }
+
+    /** Re-counts the table and drops every materialized page. */
+    void refresh() {
+        long current = ++generation;
+        busy.set(true);
+        AsyncLoader.onFx(AsyncRepository.loadInventoryHead(), head -> {
+            if (current != generation) return;
+            maxId = head.getMaxId();
+            reset(head.getCount());
+        }, e -> {
+            busy.set(false);
+            onError.accept(e);
+        });
+    }
+
+    /**
+     * Follows a store change. Loaded rows were already updated in place and are only re-rendered;
+     * inserts, deletes and sort-key changes, of loaded rows or not, shift row positions, so those
+     * fall back to {@link #refresh()} of the window.
+     */
+    private void apply(InventoryChange change) {
+        if (change.isReload() || !change.getRemovedIds().isEmpty()) {
+            refresh();
+            return;
+        }
+        Map<Integer, FoodItem> byId = new HashMap<>();
+        for (FoodItem item : change.getChanged()) {
+            if (item.getId() > maxId) {
+                refresh();
+                return;
+            }
+            byId.put(item.getId(), item);
+        }
+        // Bail out before touching anything if positions would move. Rows that are not loaded move
+        // into, out of or across the window too; when no view held one its old key is unknown, so
+        // unless the order is by id assume it changed
+        for (FoodItem item : byId.values()) {
+            FoodItem before = change.previous(item.getId());
+            if (before == null ? sort != InventorySort.ID : !sort.keyOf(item).equals(sort.keyOf(before))) {
+                refresh();
+                return;
+            }
+        }
+        Set<Integer> patches = new TreeSet<>(); // absolute indexes
+        for (Map.Entry<Integer, List<FoodItem>> page : pages.entrySet()) {
+            List<FoodItem> rows = page.getValue();
+            for (int i = 0; i < rows.size(); i++) {
+                if (byId.containsKey(rows.get(i).getId())) patches.add(page.getKey() * PAGE_SIZE + i);
+            }
+        }
+        // Same instances, new values: a set event makes rows re-run updateItem (e.g. status styling)
+        beginChange();
+        for (int index : patches) {
+            nextSet(index, get(index));
+        }
+        endChange();
+    }
+
+    void sortBy(InventorySort newSort, boolean newAscending) {
+        if (newSort == sort && newAscending == ascending) return;
+        sort = newSort;
+        ascending = newAscending;
+        generation++;
+        reset(size);
+    }
+
+    /** Pushes the table's primary sort column down into the query instead of sorting in memory. */
+    void bindSorting(TableView<FoodItem> table, InventorySort defaultSort, boolean defaultAscending) {
+        table.setSortPolicy(t -> {
+            InventorySort requested = defaultSort;
+            boolean requestedAscending = defaultAscending;
+            if (!t.getSortOrder().isEmpty()) {
+                TableColumn<FoodItem, ?> column = t.getSortOrder().get(0);
+                Object factory = column.getCellValueFactory();
+                if (factory instanceof PropertyValueFactory) {
+                    String property = ((PropertyValueFactory<?, ?>) factory).getProperty();
+                    InventorySort mapped = InventorySort.forProperty(property);
+                    if (mapped != null) {
+                        requested = mapped;
+                        requestedAscending = column.getSortType() == TableColumn.SortType.ASCENDING;
+                    }
+                }
+            }
+            sortBy(requested, requestedAscending);
+            return true;
+        });
+    }
+
+    private void reset(int newSize) {
+        pages.clear();
+        pageEnds.clear();
+        loading.clear();
+        busy.set(false);
+        int oldSize = size;
+        size = newSize;
+        beginChange();
+        if (oldSize > 0) nextRemove(0, Collections.nCopies(oldSize, (FoodItem) null));
+        if (newSize > 0) nextAdd(0, newSize);
+        endChange();
+    }
+
+    private void requestPage(int page) {
+        if (!loading.add(page)) return;
+        busy.set(true);
+        long current = generation;
+        long readAt = store.version();
+        Object[] previousEnd = page == 0 ? null : pageEnds.get(page - 1);
+        CompletableFuture<List<FoodItem>> request;
+        if (page == 0) {
+            request = AsyncRepository.loadFoodItemsAfter(sort, ascending, null, 0, PAGE_SIZE);
+        } else if (previousEnd != null) {
+            request = AsyncRepository.loadFoodItemsAfter(sort, ascending, previousEnd[0], (Integer) previousEnd[1], PAGE_SIZE);
+        } else {
+            // Jumped past pages we have never seen: fall back to an offset query once
+            request = AsyncRepository.loadFoodItemsAt(sort, ascending, page * PAGE_SIZE, PAGE_SIZE);
+        }
+        AsyncLoader.onFx(request, fetched -> {
+            if (current != generation) return;
+            loading.remove(page);
+            busy.set(!loading.isEmpty());
+            List<FoodItem> rows = store.intern(fetched, readAt);
+            pages.put(page, rows);
+            if (!rows.isEmpty()) {
+                FoodItem last = rows.get(rows.size() - 1);
+                pageEnds.put(page, new Object[] { sort.keyOf(last), last.getId() });
+            }
+            int from = page * PAGE_SIZE;
+            int to = Math.min(size, from + rows.size());
+            if (from < to) {
+                beginChange();
+                nextReplace(from, to, Collections.nCopies(to - from, (FoodItem) null));
+                endChange();
+            }
+        }, e -> {
+            // The page stays marked as loading so a failing query is not retried on every layout pass;
+            // the next refresh() or sort change clears it
+            if (current != generation) return;
+            busy.set(false);
+            onError.accept(e);
+        });
+    }
+}
@@ -0,0 +1,42 @@
+package controller;
+
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.WeakChangeListener;
+import javafx.css.PseudoClass;
+import javafx.scene.control.TableRow;
+import javafx.scene.control.TableView;
+import model.FoodItem;
+import model.StockStatus;
+
+/**
+ * Inventory row that exposes the item's {@link StockStatus} as a CSS pseudo-class
+ * (:expired, :expiring-soon, :low-stock), so recycling a row only flips a few flags.
+ */
+final class StockStatusRow extends TableRow<FoodItem> {
+    private static final PseudoClass EXPIRED = PseudoClass.getPseudoClass("expired");
+    private static final PseudoClass EXPIRING_SOON = PseudoClass.getPseudoClass("expiring-soon");
+    private static final PseudoClass LOW_STOCK = PseudoClass.getPseudoClass("low-stock");
+
+    /**
+     * Uses status rows in {@code table} and restyles them all when the date rolls over; {@code onNewDay}
+     * runs too, e.g. to reload alert counts. The clock only holds the listener weakly, via the table.
+     */
+    static void install(TableView<FoodItem> table, Runnable onNewDay) {
+        table.setRowFactory(tv -> new StockStatusRow());
+        ChangeListener<Number> listener = (obs, oldDay, newDay) -> {
+            table.refresh();
+            onNewDay.run();
+        };
+        table.getProperties().put(StockStatusRow.class, listener);
+        DayClock.get().todayProperty().addListener(new WeakChangeListener<>(listener));
+    }
+
+    @Override
+    protected void updateItem(FoodItem item, boolean empty) {
+        super.updateItem(item, empty);
+        StockStatus status = empty || item == null ? StockStatus.NORMAL : item.getStatus(DayClock.get().today());
+        pseudoClassStateChanged(EXPIRED, status == StockStatus.EXPIRED);
+        pseudoClassStateChanged(EXPIRING_SOON, status == StockStatus.EXPIRING_SOON);
+        pseudoClassStateChanged(LOW_STOCK, status == StockStatus.LOW_STOCK);
+    }
+}
@@ -1,7 +1,11 @@
 package controller;
 
-import database.DBUtil;
+import database.AsyncRepository;
+import database.CsvExporter;
+import database.InventorySort;
+import database.StockSummary;
 import javafx.collections.FXCollections;
+import javafx.concurrent.Task;
 import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
@@ -13,11 +17,12 @@ import javafx.stage.Stage;
 import model.FoodItem;
 import model.Order;
 
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.function.Consumer;
 
 public class SupplierController {
     @FXML private TextField nameField;
@@ -25,6 +30,10 @@ public class SupplierController {
     @FXML private TextField qtyField;
     @FXML private TextField expiryField;
     @FXML private Label statusLabel;
+    @FXML private ProgressIndicator busyIndicator;
+    @FXML private Label alertLabel;
+    @FXML private ProgressBar taskProgress;
+    @FXML private Button cancelTaskButton;
 
     @FXML private TableView<FoodItem> inventoryTable;
     @FXML private TableColumn<FoodItem, Integer> invColId;
@@ -33,6 +42,13 @@ public class SupplierController {
     @FXML private TableColumn<FoodItem, Integer> invColQty;
     @FXML private TableColumn<FoodItem, String> invColExpiry;
 
+    @FXML private TableView<StockSummary.Total> summaryTable;
+    @FXML private TableColumn<StockSummary.Total, String> sumColCategory;
+    @FXML private TableColumn<StockSummary.Total, Integer> sumColItems;
+    @FXML private TableColumn<StockSummary.Total, Long> sumColQty;
+    @FXML private Label expiryLabel;
+    @FXML private Label demandLabel;
+
     @FXML private TableView<Order> ordersTable;
     @FXML private TableColumn<Order, Integer> ordColId;
     @FXML private TableColumn<Order, String> ordColNgo;
@@ -40,8 +56,23 @@ public class SupplierController {
     @FXML private TableColumn<Order, Integer> ordColQty;
     @FXML private TableColumn<Order, String> ordColDate;
 
-    private final ObservableList<FoodItem> inventory = FXCollections.observableArrayList();
+    // Summary panel: expiry per week this many weeks ahead, and the NGOs that ordered the most
+    private static final int SUMMARY_WEEKS = 4;
+    private static final int SUMMARY_TOP_NGOS = 3;
+
+    private final PagedFoodItemList inventory = new PagedFoodItemList(InventorySort.ID, false,
+            e -> statusLabel.setText("DB error: " + e.getMessage()));
     private final ObservableList<Order> allOrders = FXCollections.observableArrayList();
+    private final AsyncLoader alertsLoader = new AsyncLoader();
+    private final AsyncLoader summaryLoader = new AsyncLoader();
+    private final InventoryStore store = InventoryStore.get();
+    private final Consumer<InventoryChange> inventoryListener = change -> { // the store holds it weakly
+        refreshAlerts();
+        refreshSummary(); // orders placed change stock too, so this also covers demand
+    };
+    private OrderListSync ordersSync;
+    private CsvExportTask exportTask;
+    private CsvImportTask importTask;
 
     @FXML
     private void initialize() {
@@ -51,6 +82,9 @@ public class SupplierController {
         invColQty.setCellValueFactory(new PropertyValueFactory<>("quantity"));
         invColExpiry.setCellValueFactory(new PropertyValueFactory<>("expiryDate"));
         inventoryTable.setItems(inventory);
+        inventoryTable.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+        StockStatusRow.install(inventoryTable, this::refreshAlerts);
+        inventory.bindSorting(inventoryTable, InventorySort.ID, false);
 
         ordColId.setCellValueFactory(new PropertyValueFactory<>("id"));
         ordColNgo.setCellValueFactory(new PropertyValueFactory<>("ngoUsername"));
@@ -58,47 +92,54 @@ public class SupplierController {
         ordColQty.setCellValueFactory(new PropertyValueFactory<>("quantity"));
         ordColDate.setCellValueFactory(new PropertyValueFactory<>("orderDate"));
         ordersTable.setItems(allOrders);
+        ordersTable.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+        ordersSync = new OrderListSync(allOrders, null, e -> statusLabel.setText("DB error: " + e.getMessage()));
+
+        sumColCategory.setCellValueFactory(new PropertyValueFactory<>("label"));
+        sumColItems.setCellValueFactory(new PropertyValueFactory<>("items"));
+        sumColQty.setCellValueFactory(new PropertyValueFactory<>("quantity"));
+
+        busyIndicator.visibleProperty().bind(inventory.busyProperty().or(ordersSync.runningProperty()));
 
-        refreshInventory();
+        store.addListener(inventoryListener);
+        inventory.refresh();
+        refreshAlerts();
+        refreshSummary();
         refreshOrders();
     }
 
-    private void refreshInventory() {
-        inventory.clear();
-        try (Connection c = DBUtil.getConnection();
-             PreparedStatement ps = c.prepareStatement("SELECT id, name, category, quantity, expiry_date FROM food_items ORDER BY id DESC");
-             ResultSet rs = ps.executeQuery()) {
-            while (rs.next()) {
-                inventory.add(new FoodItem(
-                        rs.getInt("id"),
-                        rs.getString("name"),
-                        rs.getString("category"),
-                        rs.getInt("quantity"),
-                        rs.getString("expiry_date")
-                ));
-            }
-        } catch (SQLException e) {
-            statusLabel.setText("DB error: " + e.getMessage());
-        }
+    private void refreshSummary() {
+        summaryLoader.submit(() -> AsyncRepository.loadStockSummary(SUMMARY_WEEKS, SUMMARY_TOP_NGOS), summary -> {
+            summaryTable.getItems().setAll(summary.getCategories());
+            String weeks = summary.getExpiryWeeks().stream()
+                    .map(week -> "week of " + week.getLabel() + ": " + week.getQuantity())
+                    .collect(Collectors.joining(", "));
+            expiryLabel.setText("Expired: " + summary.getExpired().getQuantity() + " in " + summary.getExpired().getItems() + " lot(s)" +
+                    (weeks.isEmpty() ? "" : "\nExpiring " + weeks));
+            String ngos = summary.getTopNgos().stream()
+                    .map(ngo -> ngo.getLabel() + " " + ngo.getQuantity() + " (" + ngo.getItems() + " orders)")
+                    .collect(Collectors.joining(", "));
+            demandLabel.setText(ngos.isEmpty() ? "No orders yet" : "Most ordered: " + ngos);
+        }, e -> expiryLabel.setText("Summary unavailable: " + e.getMessage()));
+    }
+
+    /** Checks the summary totals against the items and orders, rebuilding them if they drifted. */
+    @FXML
+    private void handleVerifyTotals() {
+        statusLabel.setText("Verifying totals...");
+        AsyncLoader.onFx(AsyncRepository.verifyAggregates(), drifted -> {
+            statusLabel.setText(drifted.isEmpty() ? "Totals are correct" : "Rebuilt " + String.join(", ", drifted));
+            if (!drifted.isEmpty()) refreshSummary();
+        }, e -> statusLabel.setText("Verify failed: " + e.getMessage()));
+    }
+
+    private void refreshAlerts() {
+        alertsLoader.submit(AsyncRepository::loadStockAlerts, alerts -> alertLabel.setText(alerts.summary()),
+                e -> alertLabel.setText(""));
     }
 
     private void refreshOrders() {
-        allOrders.clear();
-        try (Connection c = DBUtil.getConnection();
-             ResultSet rs = DBUtil.selectAllOrders(c)) {
-            while (rs.next()) {
-                allOrders.add(new Order(
-                        rs.getInt("id"),
-                        rs.getString("ngo_username"),
-                        rs.getInt("item_id"),
-                        rs.getString("item_name"),
-                        rs.getInt("quantity"),
-                        rs.getString("order_date")
-                ));
-            }
-        } catch (SQLException e) {
-            statusLabel.setText("DB error: " + e.getMessage());
-        }
+        ordersSync.reload();
     }
 
     @FXML
@@ -110,65 +151,129 @@ public class SupplierController {
         String expiry = expiryField.getText() == null ? "" : expiryField.getText().trim();
         if (name.isEmpty()) { statusLabel.setText("Name required"); return; }
         if (qty <= 0) { statusLabel.setText("Qty must be > 0"); return; }
-        try (Connection c = DBUtil.getConnection()) {
-            DBUtil.insertFoodItem(c, name, category, qty, expiry);
+        AsyncLoader.onFx(store.insertFoodItem(name, category, qty, expiry), ignored -> {
             statusLabel.setText("Stock added");
             nameField.clear(); categoryField.clear(); qtyField.clear(); expiryField.clear();
-            refreshInventory();
-        } catch (SQLException e) {
-            statusLabel.setText("Add failed: " + e.getMessage());
-        }
+        }, e -> statusLabel.setText("Add failed: " + e.getMessage()));
     }
 
+    /** Deletes every selected item with one confirmation and one write. */
     @FXML
     private void handleDeleteSelected() {
-        FoodItem selected = inventoryTable.getSelectionModel().getSelectedItem();
-        if (selected == null) {
-            statusLabel.setText("Select an item to delete");
+        List<FoodItem> selected = inventoryTable.getSelectionModel().getSelectedItems().stream()
+                .filter(Objects::nonNull) // rows of pages not loaded yet
+                .collect(Collectors.toList());
+        if (selected.isEmpty()) {
+            statusLabel.setText("Select items to delete");
             return;
         }
         Alert confirm = new Alert(Alert.AlertType.CONFIRMATION);
         confirm.setTitle("Confirm Delete");
-        confirm.setHeaderText("Delete Food Item");
-        confirm.setContentText("Are you sure you want to delete '" + selected.getName() + "'?");
+        confirm.setHeaderText(selected.size() == 1 ? "Delete Food Item" : "Delete " + selected.size() + " Food Items");
+        confirm.setContentText(selected.size() == 1
+                ? "Are you sure you want to delete '" + selected.get(0).getName() + "'?"
+                : "Are you sure you want to delete the " + selected.size() + " selected items?");
         Optional<ButtonType> result = confirm.showAndWait();
         if (result.isPresent() && result.get() == ButtonType.OK) {
-            try (Connection c = DBUtil.getConnection()) {
-                DBUtil.deleteFoodItemById(c, selected.getId());
-                statusLabel.setText("Item deleted");
-                refreshInventory();
-            } catch (SQLException e) {
-                statusLabel.setText("Delete failed: " + e.getMessage());
-            }
+            int[] ids = selected.stream().mapToInt(FoodItem::getId).toArray();
+            AsyncLoader.onFx(store.deleteFoodItems(ids), deleted -> statusLabel.setText(deleted + " item(s) deleted"),
+                    e -> statusLabel.setText("Delete failed: " + e.getMessage()));
         }
     }
 
+    /** Marks every selected order completed with one confirmation and one write. */
     @FXML
     private void handleMarkOrderCompleted() {
-        Order selected = ordersTable.getSelectionModel().getSelectedItem();
-        if (selected == null) {
-            statusLabel.setText("Select an order to mark completed");
+        List<Order> selected = new ArrayList<>(ordersTable.getSelectionModel().getSelectedItems());
+        if (selected.isEmpty()) {
+            statusLabel.setText("Select orders to mark completed");
             return;
         }
         Alert confirm = new Alert(Alert.AlertType.CONFIRMATION);
         confirm.setTitle("Complete Order");
-        confirm.setHeaderText("Mark Order as Completed");
-        confirm.setContentText("Mark order #" + selected.getId() + " as completed?");
+        confirm.setHeaderText(selected.size() == 1 ? "Mark Order as Completed" : "Mark " + selected.size() + " Orders as Completed");
+        confirm.setContentText(selected.size() == 1
+                ? "Mark order #" + selected.get(0).getId() + " as completed?"
+                : "Mark the " + selected.size() + " selected orders as completed?");
         Optional<ButtonType> result = confirm.showAndWait();
         if (result.isPresent() && result.get() == ButtonType.OK) {
-            try {
-                DBUtil.markOrderCompleted(selected.getId());
-                statusLabel.setText("Order marked completed");
-                refreshOrders();
-            } catch (SQLException e) {
-                statusLabel.setText("Update failed: " + e.getMessage());
-            }
+            int[] ids = selected.stream().mapToInt(Order::getId).toArray();
+            // The orders table follows through the change bus, with one delta sync for the whole batch
+            AsyncLoader.onFx(AsyncRepository.markOrdersCompleted(ids), marked -> statusLabel.setText(marked + " order(s) marked completed"),
+                    e -> statusLabel.setText("Update failed: " + e.getMessage()));
+        }
+    }
+
+    @FXML
+    private void handleImportStock() {
+        if (importTask != null && importTask.isRunning()) {
+            statusLabel.setText("An import is already running");
+            return;
+        }
+        CsvImportTask task = CsvImportTask.start(statusLabel.getScene().getWindow());
+        if (task == null) return;
+        importTask = task;
+        showProgress(task);
+        statusLabel.setText("Importing " + task.getFile().getName() + "...");
+        // Committed batches show up even if the import fails or is cancelled part-way
+        task.setOnSucceeded(e -> {
+            statusLabel.setText(CsvImportTask.summary(task.getValue()));
+            store.reloadAll();
+        });
+        task.setOnCancelled(e -> {
+            statusLabel.setText("Import cancelled");
+            store.reloadAll();
+        });
+        task.setOnFailed(e -> {
+            statusLabel.setText("Import failed: " + task.getException().getMessage());
+            store.reloadAll();
+        });
+    }
+
+    @FXML
+    private void handleExportInventory() {
+        startExport(CsvExporter.Kind.INVENTORY);
+    }
+
+    @FXML
+    private void handleExportOrders() {
+        startExport(CsvExporter.Kind.ORDERS);
+    }
+
+    @FXML
+    private void handleCancelTask() {
+        if (exportTask != null) exportTask.cancel();
+        if (importTask != null) importTask.cancel();
+    }
+
+    /** Shows one import or export in the header progress bar, with a cancel button while it runs. */
+    private void showProgress(Task<?> task) {
+        taskProgress.progressProperty().bind(task.progressProperty());
+        taskProgress.visibleProperty().bind(task.runningProperty());
+        cancelTaskButton.visibleProperty().bind(task.runningProperty());
+    }
+
+    private void startExport(CsvExporter.Kind kind) {
+        if (exportTask != null && exportTask.isRunning()) {
+            statusLabel.setText("An export is already running");
+            return;
         }
+        CsvExportTask task = CsvExportTask.start(statusLabel.getScene().getWindow(), kind, null);
+        if (task == null) return;
+        exportTask = task;
+        showProgress(task);
+        task.messageProperty().addListener((obs, oldMessage, message) -> statusLabel.setText(message));
+        task.setOnSucceeded(e -> statusLabel.setText("Exported " + task.getValue() + " rows to " + task.getFile().getName()));
+        task.setOnCancelled(e -> statusLabel.setText("Export cancelled"));
+        task.setOnFailed(e -> statusLabel.setText("Export failed: " + task.getException().getMessage()));
     }
 
     @FXML
     private void handleLogout() {
         try {
+            ordersSync.cancel();
+            alertsLoader.cancel();
+            summaryLoader.cancel();
             model.Session.setCurrentUser(null);
             Parent root = FXMLLoader.load(getClass().getResource("/Login.fxml"));
             Stage stage = (Stage) statusLabel.getScene().getWindow();
@@ -0,0 +1,78 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Summary tables kept up to date by triggers (migration 8), in the same transaction as the write
+ * that changes the underlying rows, so dashboards read one row per category, week or NGO instead of
+ * scanning food_items and orders:
+ * <ul>
+ *   <li>category_stock: lots and total quantity per category</li>
+ *   <li>expiry_week_stock: lots and total quantity per expiry week (see {@link #expiryWeek}), dated lots only</li>
+ *   <li>ngo_demand: orders placed and quantity ordered per NGO, archived orders included</li>
+ * </ul>
+ * Every table has the same shape: a key, {@code items} (rows counted: lots or orders) and
+ * {@code quantity}. {@link #rebuild} recomputes them from the base tables and {@link #verify}
+ * reports the ones that no longer match, e.g. after the database was edited with the triggers bypassed.
+ */
+final class Aggregates {
+    static final String CATEGORY_STOCK = "category_stock";
+    static final String EXPIRY_WEEK_STOCK = "expiry_week_stock";
+    static final String NGO_DEMAND = "ngo_demand";
+
+    // Each summary table with the query that computes it from scratch, in column order
+    private static final String[][] SOURCES = {
+        { CATEGORY_STOCK,
+            "SELECT " + DatabaseConfig.COL_CATEGORY_ID + ", COUNT(*), IFNULL(SUM(" + DatabaseConfig.COL_QUANTITY + "), 0) FROM " +
+            DatabaseConfig.TABLE_FOOD_ITEMS + " GROUP BY " + DatabaseConfig.COL_CATEGORY_ID },
+        { EXPIRY_WEEK_STOCK,
+            "SELECT " + expiryWeek(DatabaseConfig.COL_EXPIRY_DAY) + ", COUNT(*), IFNULL(SUM(" + DatabaseConfig.COL_QUANTITY + "), 0) FROM " +
+            DatabaseConfig.TABLE_FOOD_ITEMS + " WHERE " + DatabaseConfig.COL_EXPIRY_DAY + " IS NOT NULL GROUP BY 1" },
+        { NGO_DEMAND,
+            "SELECT ngo_username, COUNT(*), SUM(quantity) FROM " +
+            "(SELECT ngo_username, quantity FROM orders UNION ALL SELECT ngo_username, quantity FROM orders_archive) GROUP BY 1" },
+    };
+
+    private Aggregates() {}
+
+    /** Week number of an epoch day, weeks starting on Monday: week w starts on day 7w - 3. */
+    static String expiryWeek(String epochDay) {
+        return "(" + epochDay + " + 3) / 7";
+    }
+
+    static long weekOf(long epochDay) {
+        return Math.floorDiv(epochDay + 3, 7);
+    }
+
+    static long firstDayOf(long week) {
+        return week * 7 - 3;
+    }
+
+    /** Recomputes every summary table from the base tables. */
+    static void rebuild(Statement statement) throws SQLException {
+        for (String[] source : SOURCES) {
+            statement.executeUpdate("DELETE FROM " + source[0]);
+            statement.executeUpdate("INSERT INTO " + source[0] + " " + source[1]);
+        }
+    }
+
+    /** Names of the summary tables whose rows differ from what {@link #rebuild} would write. */
+    static List<String> verify(Connection connection) throws SQLException {
+        List<String> drifted = new ArrayList<>();
+        try (Statement statement = connection.createStatement()) {
+            for (String[] source : SOURCES) {
+                String stored = "SELECT * FROM " + source[0];
+                try (ResultSet rs = statement.executeQuery(
+                        "SELECT EXISTS (" + stored + " EXCEPT " + source[1] + ") OR EXISTS (" + source[1] + " EXCEPT " + stored + ")")) {
+                    if (rs.next() && rs.getInt(1) != 0) drifted.add(source[0]);
+                }
+            }
+        }
+        return drifted;
+    }
+}
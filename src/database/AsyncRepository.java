@@ -0,0 +1,342 @@
+package database;
+
+import java.lang.reflect.Method;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import model.FoodItem;
+import model.Order;
+import model.OrderLine;
+import model.PrefixIndex;
+import model.SearchIndex;
+
+/**
+ * Asynchronous facade over {@link DBUtil}. Every call runs its JDBC work off the JavaFX
+ * Application Thread and returns a {@link CompletableFuture}; controllers marshal the
+ * result back to the UI themselves.
+ *
+ * Work runs on virtual threads when the JVM supports them (Java 21+), otherwise on a
+ * small pool of daemon threads sized to the connection pool.
+ */
+public final class AsyncRepository {
+    private static final System.Logger LOG = System.getLogger(AsyncRepository.class.getName());
+    private static final ExecutorService EXECUTOR = createExecutor();
+    private static ScheduledExecutorService archiver;
+
+    private AsyncRepository() {}
+
+    public static <T> CompletableFuture<T> read(SqlWork<T> work) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return DBUtil.withReader(work);
+            } catch (SQLException e) {
+                throw new CompletionException(e);
+            }
+        }, EXECUTOR);
+    }
+
+    /** Queues {@code work} for the writer thread; it commits together with other pending writes. */
+    public static <T> CompletableFuture<T> write(SqlWork<T> work) {
+        return DBUtil.submitWrite(work);
+    }
+
+    /** Runs a {@link DBUtil} call that manages its own connection. */
+    public static CompletableFuture<Void> run(SqlAction action) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                action.run();
+            } catch (SQLException e) {
+                throw new CompletionException(e);
+            }
+        }, EXECUTOR);
+    }
+
+    /** Runs a long background job, such as an export, on the same executor as the queries. */
+    public static void execute(Runnable job) {
+        EXECUTOR.execute(job);
+    }
+
+    // Inventory
+
+    public static CompletableFuture<List<FoodItem>> loadFoodItems(String orderBy) {
+        return read(c -> DBUtil.listFoodItems(c, orderBy));
+    }
+
+    public static CompletableFuture<InventoryHead> loadInventoryHead() {
+        return read(DBUtil::selectInventoryHead);
+    }
+
+    public static CompletableFuture<ChangeSet<FoodItem>> loadFoodItemChanges(long sinceSeq) {
+        return read(c -> DBUtil.selectFoodItemChanges(c, sinceSeq));
+    }
+
+    public static CompletableFuture<SearchIndex> loadSearchIndex() {
+        return read(DBUtil::loadSearchIndex);
+    }
+
+    public static CompletableFuture<PrefixIndex> loadPrefixIndex() {
+        return read(DBUtil::loadPrefixIndex);
+    }
+
+    public static CompletableFuture<List<FoodItem>> loadFoodItemsByIds(int[] ids) {
+        return read(c -> DBUtil.selectFoodItemsByIds(c, ids));
+    }
+
+    public static CompletableFuture<List<FoodItem>> loadFoodItemsAfter(InventorySort sort, boolean ascending,
+                                                                       Object afterKey, int afterId, int limit) {
+        return read(c -> DBUtil.selectFoodItemsAfter(c, sort, ascending, afterKey, afterId, limit));
+    }
+
+    public static CompletableFuture<List<FoodItem>> loadFoodItemsAt(InventorySort sort, boolean ascending,
+                                                                    int offset, int limit) {
+        return read(c -> DBUtil.selectFoodItemsAt(c, sort, ascending, offset, limit));
+    }
+
+    public static CompletableFuture<List<FoodItem>> loadInStockFoodItems(int limit) {
+        return read(c -> DBUtil.listInStockFoodItems(c, limit));
+    }
+
+    public static CompletableFuture<StockAlerts> loadStockAlerts() {
+        long today = LocalDate.now().toEpochDay();
+        return read(c -> DBUtil.countStockAlerts(c, today));
+    }
+
+    /** Summary totals, with expiry per week for {@code weeks} weeks from today. */
+    public static CompletableFuture<StockSummary> loadStockSummary(int weeks, int topNgos) {
+        long today = LocalDate.now().toEpochDay();
+        return read(c -> DBUtil.selectStockSummary(c, today, weeks, topNgos));
+    }
+
+    /**
+     * Checks the summary tables against the base tables and rebuilds them if they drifted; completes
+     * with the names of the tables that had drifted (empty when all matched).
+     */
+    public static CompletableFuture<List<String>> verifyAggregates() {
+        return write(c -> {
+            List<String> drifted = DBUtil.verifyAggregates(c);
+            if (!drifted.isEmpty()) DBUtil.rebuildAggregates(c);
+            return drifted;
+        });
+    }
+
+    public static CompletableFuture<List<FoodItem>> loadExpiringFoodItems(int days, int limit) {
+        long today = LocalDate.now().toEpochDay();
+        return read(c -> DBUtil.selectExpiringFoodItems(c, today, days, limit));
+    }
+
+    public static CompletableFuture<List<FoodItem>> searchFoodItems(String term, int limit) {
+        return read(c -> DBUtil.searchFoodItems(c, term, limit));
+    }
+
+    public static CompletableFuture<Void> insertFoodItem(String name, String category, int quantity, String expiryDate) {
+        return publishing(write(c -> {
+            DBUtil.insertFoodItem(c, name, category, quantity, expiryDate);
+            return null;
+        }), ChangeBus.Topic.INVENTORY);
+    }
+
+    /** See {@link DBUtil#updateFoodItem}; a refused update publishes nothing. */
+    public static CompletableFuture<UpdateResult> updateFoodItem(int id, int expectedVersion, String name, String category,
+                                                                 int quantityDelta, String expiryDate) {
+        return write(c -> DBUtil.updateFoodItem(c, id, expectedVersion, name, category, quantityDelta, expiryDate))
+                .whenComplete((result, error) -> {
+                    StockLedger.invalidate(id);
+                    if (error == null && result.isApplied()) ChangeBus.publish(ChangeBus.Topic.INVENTORY);
+                });
+    }
+
+    public static CompletableFuture<Void> deleteFoodItem(int id) {
+        CompletableFuture<Void> deleted = write(c -> {
+            DBUtil.deleteFoodItemById(c, id);
+            return null;
+        });
+        return publishing(deleted.whenComplete((ignored, error) -> StockLedger.invalidate(id)), ChangeBus.Topic.INVENTORY);
+    }
+
+    /** Deletes several items in one write, publishing one change for all of them; completes with the number deleted. */
+    public static CompletableFuture<Integer> deleteFoodItems(int[] ids) {
+        return publishing(write(c -> DBUtil.deleteFoodItems(c, ids))
+                .whenComplete((ignored, error) -> {
+                    for (int id : ids) StockLedger.invalidate(id);
+                }), ChangeBus.Topic.INVENTORY);
+    }
+
+    // Orders
+
+    /** Pending orders of one NGO, or of everyone when ngoUsername is null, with the sequence to sync from. */
+    public static CompletableFuture<ChangeSet<Order>> loadPendingOrders(String ngoUsername) {
+        return read(c -> DBUtil.selectPendingOrders(c, ngoUsername));
+    }
+
+    public static CompletableFuture<ChangeSet<Order>> loadOrderChanges(long sinceSeq, String ngoUsername) {
+        return read(c -> DBUtil.selectOrderChanges(c, sinceSeq, ngoUsername));
+    }
+
+    /** History of one NGO, or of everyone when ngoUsername is null: a page of orders older than beforeId, newest first. */
+    public static CompletableFuture<List<Order>> loadOrderHistory(String ngoUsername, int beforeId, int limit) {
+        return read(c -> DBUtil.selectOrderHistory(c, ngoUsername, beforeId, limit));
+    }
+
+    public static CompletableFuture<Void> placeOrder(String ngoUsername, int itemId, String itemName, int qty, String orderDate) {
+        return placeOrderLines(ngoUsername, List.of(new OrderLine(itemId, itemName, qty)), false, orderDate)
+                .thenAccept(result -> {
+                    if (!result.isComplete()) {
+                        throw new CompletionException(new SQLException("Insufficient stock or item not found"));
+                    }
+                });
+    }
+
+    /**
+     * Places a cart. Lines are first checked against {@link StockLedger}, so a cart that cannot be
+     * filled is turned down without a write; admitted lines are then placed in one transaction.
+     */
+    public static CompletableFuture<CartResult> placeOrderLines(String ngoUsername, List<OrderLine> lines, boolean partialFill, String orderDate) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return StockLedger.reserve(lines, partialFill);
+            } catch (SQLException e) {
+                throw new CompletionException(e);
+            }
+        }, EXECUTOR).thenCompose(reservation -> {
+            if (reservation.getLines().isEmpty()) {
+                return CompletableFuture.completedFuture(new CartResult(new ArrayList<>(), reservation.getProblems()));
+            }
+            return write(c -> DBUtil.placeOrderLines(c, ngoUsername, reservation.getLines(), partialFill, orderDate))
+                    .whenComplete((result, error) -> {
+                        if (error != null) {
+                            StockLedger.release(reservation);
+                        } else {
+                            StockLedger.settle(reservation, result.getPlaced());
+                            if (!result.getPlaced().isEmpty()) ChangeBus.publish(ChangeBus.Topic.INVENTORY, ChangeBus.Topic.ORDERS);
+                        }
+                    })
+                    .thenApply(result -> {
+                        List<String> problems = new ArrayList<>(reservation.getProblems());
+                        problems.addAll(result.getProblems());
+                        return new CartResult(result.getPlaced(), problems);
+                    });
+        });
+    }
+
+    /**
+     * Places a cart by product, each line split over the product's lots soonest expiry first (see
+     * {@link DBUtil#placeProductOrders}). Which lots a line takes is only known in the writer, so
+     * these skip the {@link StockLedger} check; the lots they drew from are re-read by it afterwards.
+     */
+    public static CompletableFuture<CartResult> placeProductOrders(String ngoUsername, List<OrderLine> lines, boolean partialFill, String orderDate) {
+        int today = (int) LocalDate.now().toEpochDay();
+        return write(c -> DBUtil.placeProductOrders(c, ngoUsername, lines, partialFill, orderDate, today))
+                .whenComplete((result, error) -> {
+                    if (error != null || result.getPlaced().isEmpty()) return;
+                    for (OrderLine lot : result.getPlaced()) StockLedger.invalidate(lot.getItemId());
+                    ChangeBus.publish(ChangeBus.Topic.INVENTORY, ChangeBus.Topic.ORDERS);
+                });
+    }
+
+    public static CompletableFuture<Void> markOrderCompleted(int orderId) {
+        return publishing(write(c -> {
+            DBUtil.markOrderCompleted(c, orderId, LocalDate.now().toString());
+            return null;
+        }), ChangeBus.Topic.ORDERS);
+    }
+
+    /** Marks several orders completed today in one write, publishing one change; completes with the number marked. */
+    public static CompletableFuture<Integer> markOrdersCompleted(int[] orderIds) {
+        String today = LocalDate.now().toString();
+        return publishing(write(c -> DBUtil.markOrdersCompleted(c, orderIds, today)), ChangeBus.Topic.ORDERS);
+    }
+
+    /**
+     * Archives old completed orders now and then every
+     * {@link DatabaseConfig#ORDER_ARCHIVE_INTERVAL_MINUTES} until {@link #shutdown()}, so a session
+     * left open keeps archiving orders as they age. A failed run is logged and the next one retries.
+     */
+    public static synchronized void startOrderArchiving() {
+        if (archiver != null) return;
+        archiver = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "order-archiver");
+            t.setDaemon(true);
+            return t;
+        });
+        // Fixed delay: a run waits for its batches, so runs never overlap
+        archiver.scheduleWithFixedDelay(() -> {
+            try {
+                archiveCompletedOrders().join();
+            } catch (CompletionException e) {
+                LOG.log(System.Logger.Level.WARNING, "Order archiving failed", e.getCause());
+            }
+        }, 0, DatabaseConfig.ORDER_ARCHIVE_INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Moves orders completed more than {@link DatabaseConfig#ORDER_ARCHIVE_AFTER_DAYS} ago to the
+     * archive, one batch per write so other writes interleave; completes with the number moved.
+     * Publishes one order change at the end if anything moved, for views that list the archive too.
+     */
+    public static CompletableFuture<Integer> archiveCompletedOrders() {
+        String cutoff = LocalDate.now().minusDays(DatabaseConfig.ORDER_ARCHIVE_AFTER_DAYS).toString();
+        return archiveCompletedOrders(cutoff, 0).whenComplete((moved, error) -> {
+            if (error == null && moved > 0) ChangeBus.publish(ChangeBus.Topic.ORDERS);
+        });
+    }
+
+    private static CompletableFuture<Integer> archiveCompletedOrders(String cutoff, int moved) {
+        int batch = DatabaseConfig.ORDER_ARCHIVE_BATCH_SIZE;
+        return write(c -> DBUtil.archiveCompletedOrders(c, cutoff, batch))
+                .thenCompose(n -> n < batch
+                        ? CompletableFuture.completedFuture(moved + n)
+                        : archiveCompletedOrders(cutoff, moved + n));
+    }
+
+    // Users
+
+    public static CompletableFuture<Void> ensureUser(String username, String role) {
+        return write(c -> {
+            DBUtil.ensureUser(c, username, role);
+            return null;
+        });
+    }
+
+    public static synchronized void shutdown() {
+        if (archiver != null) archiver.shutdownNow();
+        EXECUTOR.shutdownNow();
+    }
+
+    /** Publishes {@code topic} on {@link ChangeBus} once {@code write} has committed. */
+    private static <T> CompletableFuture<T> publishing(CompletableFuture<T> write, ChangeBus.Topic topic) {
+        return write.whenComplete((result, error) -> {
+            if (error == null) ChangeBus.publish(topic);
+        });
+    }
+
+    @FunctionalInterface
+    public interface SqlAction {
+        void run() throws SQLException;
+    }
+
+    private static ExecutorService createExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            // Pre-21 JVM: the connection pool bounds concurrency anyway
+            AtomicInteger counter = new AtomicInteger();
+            ThreadFactory threads = r -> {
+                Thread t = new Thread(r, "db-worker-" + counter.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            };
+            return Executors.newFixedThreadPool(DatabaseConfig.POOL_READERS + 1, threads);
+        }
+    }
+}
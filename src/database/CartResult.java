@@ -0,0 +1,28 @@
+package database;
+
+import java.util.Collections;
+import java.util.List;
+
+import model.OrderLine;
+
+/**
+ * Outcome of placing a multi-line order: the lines that became orders (with the quantity
+ * actually filled) and a reason for every line that was cut short or rejected.
+ */
+public final class CartResult {
+    private final List<OrderLine> placed;
+    private final List<String> problems;
+
+    CartResult(List<OrderLine> placed, List<String> problems) {
+        this.placed = Collections.unmodifiableList(placed);
+        this.problems = Collections.unmodifiableList(problems);
+    }
+
+    public List<OrderLine> getPlaced() { return placed; }
+    public List<String> getProblems() { return problems; }
+
+    /** True when every line was placed in full. */
+    public boolean isComplete() {
+        return problems.isEmpty();
+    }
+}
@@ -0,0 +1,113 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Categories and products are stored once, in their own tables, and referenced by integer id.
+ * Queries read the names back through the {@link #CATEGORY_NAME} and {@link #PRODUCT_NAME}
+ * sub-selects (primary key lookups), so rows keep only the ids. Writers resolve names to ids here,
+ * creating missing entries in their own transaction. Entries are never renamed or deleted. Every
+ * item has a category; "no category" is the one named "", so category-ordered pages can walk the
+ * categories' name index.
+ *
+ * Resolved ids are mirrored in memory, so a writer pays a lookup only for a name it has not seen.
+ * An id found or created inside a transaction is held as pending until that transaction commits:
+ * an entry created by a batch that then rolls back would otherwise be remembered with an id that
+ * points at nothing. The writers call {@link #committed()} and {@link #rolledBack()} around every
+ * commit and rollback, and another process writing to the database clears the mirror.
+ */
+final class Catalog {
+    /** Name of a food_items row's category; selects as {@link DatabaseConfig#COL_CATEGORY}. */
+    static final String CATEGORY_NAME = "(SELECT name FROM " + DatabaseConfig.TABLE_CATEGORIES +
+            " WHERE id = " + DatabaseConfig.COL_CATEGORY_ID + ")";
+    /** Name of an orders row's product; selects as item_name. */
+    static final String PRODUCT_NAME = "(SELECT name FROM " + DatabaseConfig.TABLE_PRODUCTS +
+            " WHERE id = " + DatabaseConfig.COL_PRODUCT_ID + ")";
+
+    // Committed ids, and ids seen in the open write transaction; products are keyed by category id, then name
+    private static final Map<String, Integer> CATEGORIES = new HashMap<>();
+    private static final Map<Integer, Map<String, Integer>> PRODUCTS = new HashMap<>();
+    private static final Map<String, Integer> PENDING_CATEGORIES = new HashMap<>();
+    private static final Map<Integer, Map<String, Integer>> PENDING_PRODUCTS = new HashMap<>();
+
+    private Catalog() {}
+
+    /** Id of the category called {@code name} (null is the same as ""), created if new. */
+    static synchronized int categoryId(Connection connection, String name) throws SQLException {
+        if (name == null) name = "";
+        Integer id = CATEGORIES.get(name);
+        if (id == null) id = PENDING_CATEGORIES.get(name);
+        if (id != null) return id;
+        id = selectId(connection, "SELECT id FROM " + DatabaseConfig.TABLE_CATEGORIES + " WHERE name = ?", name, null);
+        if (id == null) {
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "INSERT INTO " + DatabaseConfig.TABLE_CATEGORIES + "(name) VALUES (?)")) {
+                statement.setString(1, name);
+                statement.executeUpdate();
+            }
+            id = selectId(connection, "SELECT id FROM " + DatabaseConfig.TABLE_CATEGORIES + " WHERE name = ?", name, null);
+        }
+        PENDING_CATEGORIES.put(name, id);
+        return id;
+    }
+
+    /** Id of the product {@code name} in category {@code categoryId}, created if new. */
+    static synchronized int productId(Connection connection, String name, int categoryId) throws SQLException {
+        Integer id = PRODUCTS.getOrDefault(categoryId, Map.of()).get(name);
+        if (id == null) id = PENDING_PRODUCTS.getOrDefault(categoryId, Map.of()).get(name);
+        if (id != null) return id;
+        String select = "SELECT id FROM " + DatabaseConfig.TABLE_PRODUCTS + " WHERE name = ? AND " +
+                DatabaseConfig.COL_CATEGORY_ID + " = ?";
+        id = selectId(connection, select, name, categoryId);
+        if (id == null) {
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "INSERT INTO " + DatabaseConfig.TABLE_PRODUCTS + "(name, " + DatabaseConfig.COL_CATEGORY_ID + ") VALUES (?, ?)")) {
+                statement.setString(1, name);
+                statement.setInt(2, categoryId);
+                statement.executeUpdate();
+            }
+            id = selectId(connection, select, name, categoryId);
+        }
+        PENDING_PRODUCTS.computeIfAbsent(categoryId, c -> new HashMap<>()).put(name, id);
+        return id;
+    }
+
+    /** Keeps the ids seen in the write transaction that just committed. */
+    static synchronized void committed() {
+        CATEGORIES.putAll(PENDING_CATEGORIES);
+        PENDING_PRODUCTS.forEach((category, names) -> PRODUCTS.computeIfAbsent(category, c -> new HashMap<>()).putAll(names));
+        PENDING_CATEGORIES.clear();
+        PENDING_PRODUCTS.clear();
+    }
+
+    /**
+     * Drops the ids seen since the last commit, after all or part of the write transaction rolled
+     * back. Those that survived are looked up again when next needed.
+     */
+    static synchronized void rolledBack() {
+        PENDING_CATEGORIES.clear();
+        PENDING_PRODUCTS.clear();
+    }
+
+    /** Drops every id, e.g. after another process wrote to the database. */
+    static synchronized void forgetAll() {
+        CATEGORIES.clear();
+        PRODUCTS.clear();
+        rolledBack();
+    }
+
+    private static Integer selectId(Connection connection, String sql, String name, Integer category) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, name);
+            if (category != null) statement.setInt(2, category);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : null;
+            }
+        }
+    }
+}
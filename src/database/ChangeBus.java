@@ -0,0 +1,67 @@
+package database;
+
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * In-process notification that committed data changed. {@link AsyncRepository} publishes after
+ * each of its writes commits; the writer thread publishes when it sees a commit made by another
+ * connection to the same database file (another window or process), which it detects by polling
+ * {@code PRAGMA data_version} while idle. Events only say what kind of data changed; subscribers
+ * read the actual changes themselves, from their own change-sequence cursor.
+ *
+ * Bulk imports do not publish per batch; whoever ran the import reloads once it ends.
+ * Listeners are held weakly and are called on the publishing thread, never the FX thread.
+ */
+public final class ChangeBus {
+    public enum Topic { INVENTORY, ORDERS }
+
+    @FunctionalInterface
+    public interface Listener {
+        /** {@code external} is set when the change was committed outside this process. */
+        void changed(Set<Topic> topics, boolean external);
+    }
+
+    private static final System.Logger LOG = System.getLogger(ChangeBus.class.getName());
+    private static final Set<Topic> ALL = Collections.unmodifiableSet(EnumSet.allOf(Topic.class));
+    private static final CopyOnWriteArrayList<WeakReference<Listener>> LISTENERS = new CopyOnWriteArrayList<>();
+
+    private ChangeBus() {}
+
+    /** Registers {@code listener}; the caller keeps it reachable for as long as it should be called. */
+    public static void subscribe(Listener listener) {
+        LISTENERS.add(new WeakReference<>(listener));
+    }
+
+    public static void unsubscribe(Listener listener) {
+        LISTENERS.removeIf(ref -> ref.get() == null || ref.get() == listener);
+    }
+
+    static void publish(Topic first, Topic... rest) {
+        publish(Collections.unmodifiableSet(EnumSet.of(first, rest)), false);
+    }
+
+    /** Another connection committed; which tables it touched is unknown. */
+    static void publishExternal() {
+        publish(ALL, true);
+    }
+
+    private static void publish(Set<Topic> topics, boolean external) {
+        for (WeakReference<Listener> ref : LISTENERS) {
+            Listener listener = ref.get();
+            if (listener == null) {
+                LISTENERS.remove(ref);
+                continue;
+            }
+            try {
+                listener.changed(topics, external);
+            } catch (RuntimeException e) {
+                // One broken subscriber must not keep the others, or the writer thread, from running
+                LOG.log(System.Logger.Level.WARNING, "Change listener failed on " + topics, e);
+            }
+        }
+    }
+}
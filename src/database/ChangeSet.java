@@ -0,0 +1,33 @@
+package database;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Rows that changed since a caller's last sync, plus the change sequence to sync from next time.
+ * When {@link #isComplete()} is false the caller's cursor is too old and it must reload fully.
+ */
+public final class ChangeSet<T> {
+    private final long seq;
+    private final boolean complete;
+    private final List<T> changed;
+    private final Set<Integer> removedIds;
+
+    ChangeSet(long seq, boolean complete, List<T> changed, Set<Integer> removedIds) {
+        this.seq = seq;
+        this.complete = complete;
+        this.changed = changed;
+        this.removedIds = removedIds;
+    }
+
+    static <T> ChangeSet<T> reloadRequired(long seq) {
+        return new ChangeSet<>(seq, false, Collections.emptyList(), Collections.emptySet());
+    }
+
+    public long getSeq() { return seq; }
+    public boolean isComplete() { return complete; }
+    public List<T> getChanged() { return changed; }
+    public Set<Integer> getRemovedIds() { return removedIds; }
+    public boolean isEmpty() { return complete && changed.isEmpty() && removedIds.isEmpty(); }
+}
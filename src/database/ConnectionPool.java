@@ -0,0 +1,246 @@
+package database;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded pool of SQLite connections: a single writer connection plus up to
+ * {@link DatabaseConfig#POOL_READERS} read-only connections.
+ *
+ * SQLite only ever allows one writer, so handing out one writer connection at a time
+ * (re-entrant for the owning thread) turns lock contention into a cheap in-process wait
+ * instead of SQLITE_BUSY errors. Readers run concurrently thanks to WAL mode.
+ * Connections returned to callers are proxies; closing them gives the physical
+ * connection back to the pool. Each physical connection keeps a {@link StatementCache},
+ * so SQL that is run again skips parsing and planning.
+ */
+final class ConnectionPool {
+    private final String url;
+    private final int maxReaders;
+    private final long acquireTimeoutMs;
+
+    private final ReentrantLock writerLock = new ReentrantLock(true);
+    private Connection writer;
+
+    private final LinkedBlockingDeque<Connection> idleReaders = new LinkedBlockingDeque<>();
+    private final Map<Connection, StatementCache> statementCaches = Collections.synchronizedMap(new IdentityHashMap<>());
+    private final List<Connection> allReaders = new ArrayList<>();
+    private boolean closed;
+
+    ConnectionPool(String url, int maxReaders, long acquireTimeoutMs) {
+        this.url = url;
+        this.maxReaders = Math.max(1, maxReaders);
+        this.acquireTimeoutMs = acquireTimeoutMs;
+    }
+
+    Connection acquireWriter() throws SQLException {
+        try {
+            if (!writerLock.tryLock(acquireTimeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Timed out waiting for the database writer connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the database writer connection", e);
+        }
+        try {
+            synchronized (this) {
+                ensureOpen();
+                if (writer == null || writer.isClosed()) {
+                    if (writer != null) closeQuietly(writer);
+                    writer = open(false);
+                }
+                return wrap(writer, true);
+            }
+        } catch (SQLException | RuntimeException e) {
+            writerLock.unlock();
+            throw e;
+        }
+    }
+
+    Connection acquireReader() throws SQLException {
+        Connection physical = idleReaders.pollFirst();
+        if (physical == null) {
+            synchronized (this) {
+                ensureOpen();
+                if (allReaders.size() < maxReaders) {
+                    physical = open(true);
+                    allReaders.add(physical);
+                }
+            }
+        }
+        if (physical == null) {
+            try {
+                physical = idleReaders.pollFirst(acquireTimeoutMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for a database connection", e);
+            }
+            if (physical == null) {
+                throw new SQLException("Timed out waiting for a database connection");
+            }
+        }
+        if (physical.isClosed()) {
+            discardReader(physical);
+            return acquireReader();
+        }
+        return wrap(physical, false);
+    }
+
+    synchronized void close() {
+        closed = true;
+        for (Connection c : allReaders) {
+            closeQuietly(c);
+        }
+        allReaders.clear();
+        idleReaders.clear();
+        if (writer != null) {
+            closeQuietly(writer);
+            writer = null;
+        }
+    }
+
+    private void ensureOpen() throws SQLException {
+        if (closed) throw new SQLException("Connection pool has been shut down");
+    }
+
+    private Connection open(boolean readOnly) throws SQLException {
+        Connection c = DriverManager.getConnection(url);
+        try (Statement s = c.createStatement()) {
+            s.execute("PRAGMA busy_timeout = " + DatabaseConfig.BUSY_TIMEOUT_MS);
+            if (!readOnly) {
+                // journal_mode is persistent in the file; setting it from the writer is enough
+                s.execute("PRAGMA journal_mode = WAL");
+            }
+            s.execute("PRAGMA synchronous = " + DatabaseConfig.PRAGMA_SYNCHRONOUS);
+            s.execute("PRAGMA cache_size = -" + DatabaseConfig.PRAGMA_CACHE_SIZE_KIB);
+            s.execute("PRAGMA mmap_size = " + DatabaseConfig.PRAGMA_MMAP_SIZE);
+            s.execute("PRAGMA temp_store = MEMORY");
+            if (readOnly) {
+                s.execute("PRAGMA query_only = 1");
+            }
+        } catch (SQLException e) {
+            closeQuietly(c);
+            throw e;
+        }
+        statementCaches.put(c, new StatementCache(c));
+        return c;
+    }
+
+    private void release(Connection physical, boolean isWriter) {
+        // Only the outermost holder resets state; nested writer handles share one transaction
+        boolean outermost = !isWriter || writerLock.getHoldCount() == 1;
+        if (outermost) {
+            try {
+                if (!physical.getAutoCommit()) {
+                    physical.rollback();
+                    if (isWriter) Catalog.rolledBack(); // a writer left its transaction open
+                    physical.setAutoCommit(true);
+                }
+            } catch (SQLException e) {
+                closeQuietly(physical);
+            }
+        }
+        if (isWriter) {
+            writerLock.unlock();
+            return;
+        }
+        synchronized (this) {
+            if (closed || isClosedQuietly(physical)) {
+                allReaders.remove(physical);
+                closeQuietly(physical);
+                return;
+            }
+        }
+        idleReaders.offerFirst(physical);
+    }
+
+    private synchronized void discardReader(Connection physical) {
+        allReaders.remove(physical);
+        closeQuietly(physical);
+    }
+
+    private Connection wrap(Connection physical, boolean isWriter) {
+        return (Connection) Proxy.newProxyInstance(
+                ConnectionPool.class.getClassLoader(),
+                new Class<?>[] { Connection.class },
+                new PooledHandler(physical, isWriter));
+    }
+
+    private static boolean isClosedQuietly(Connection c) {
+        try {
+            return c.isClosed();
+        } catch (SQLException e) {
+            return true;
+        }
+    }
+
+    private void closeQuietly(Connection c) {
+        StatementCache cache = statementCaches.remove(c);
+        if (cache != null) cache.close();
+        try {
+            c.close();
+        } catch (SQLException ignore) { /* already broken */ }
+    }
+
+    private final class PooledHandler implements InvocationHandler {
+        private final Connection physical;
+        private final boolean isWriter;
+        private boolean released;
+
+        PooledHandler(Connection physical, boolean isWriter) {
+            this.physical = physical;
+            this.isWriter = isWriter;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!released) {
+                        released = true;
+                        release(physical, isWriter);
+                    }
+                    return null;
+                case "isClosed":
+                    return released || physical.isClosed();
+                case "prepareStatement":
+                    // Only the plain form is cached; other overloads carry options the cache would lose
+                    if (args.length == 1 && !released) {
+                        StatementCache cache = statementCaches.get(physical);
+                        if (cache != null) return cache.prepare((String) args[0], (Connection) proxy);
+                    }
+                    break;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled" + (isWriter ? "Writer" : "Reader") + "[" + physical + "]";
+                default:
+                    break;
+            }
+            if (released) {
+                throw new SQLException("Connection has been returned to the pool");
+            }
+            try {
+                return method.invoke(physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
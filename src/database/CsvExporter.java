@@ -0,0 +1,208 @@
+package database;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+import java.util.zip.GZIPOutputStream;
+
+import model.FoodItem;
+import model.StockStatus;
+
+/**
+ * Streams inventory or orders from a forward-only cursor straight into a CSV file, so memory use
+ * does not depend on the row count. Rows are read in one snapshot; the file is written next to
+ * the target and only moved into place once complete, so a cancelled or failed export leaves
+ * nothing behind. Runs on the calling thread; callers put it in the background.
+ */
+public final class CsvExporter {
+    private static final int FETCH_SIZE = 1000;
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int PROGRESS_EVERY = 1000;
+
+    public enum Kind { INVENTORY, ORDERS }
+
+    /** Receives (rows written, total rows) every few thousand rows and once at the end. */
+    @FunctionalInterface
+    public interface Progress {
+        void update(long done, long total);
+    }
+
+    private CsvExporter() {}
+
+    /**
+     * Exports to {@code target}, gzip-compressed when {@code gzip} is set. Orders are limited to one
+     * NGO when {@code ngoUsername} is not null. Returns the number of data rows written.
+     *
+     * @throws CancellationException if {@code cancelled} turns true while exporting
+     */
+    public static long export(Kind kind, String ngoUsername, Path target, boolean gzip,
+                              BooleanSupplier cancelled, Progress progress) throws IOException, SQLException {
+        Path temp = Files.createTempFile(target.toAbsolutePath().getParent(), ".export-", ".tmp");
+        boolean done = false;
+        try (Connection connection = DBUtil.getReadConnection()) {
+            connection.setAutoCommit(false); // one snapshot for the count and the rows
+            try {
+                long rows;
+                try (Writer out = open(temp, gzip)) {
+                    rows = kind == Kind.INVENTORY
+                            ? writeFoodItems(connection, out, cancelled, progress)
+                            : writeOrders(connection, ngoUsername, out, cancelled, progress);
+                }
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+                done = true;
+                return rows;
+            } finally {
+                connection.commit();
+                connection.setAutoCommit(true);
+            }
+        } finally {
+            if (!done) Files.deleteIfExists(temp);
+        }
+    }
+
+    private static Writer open(Path file, boolean gzip) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        OutputStream stream = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+        if (gzip) stream = new GZIPOutputStream(stream, BUFFER_SIZE);
+        return new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    private static long writeFoodItems(Connection connection, Writer out, BooleanSupplier cancelled,
+                                       Progress progress) throws IOException, SQLException {
+        long total = count(connection, "SELECT COUNT(*) FROM " + DatabaseConfig.TABLE_FOOD_ITEMS, null);
+        long today = LocalDate.now().toEpochDay();
+        out.write("ID,Name,Category,Quantity,Expiry Date,Status\n");
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT " + DatabaseConfig.COL_ID + ", " + DatabaseConfig.COL_NAME + ", " + Catalog.CATEGORY_NAME + ", " +
+                DatabaseConfig.COL_QUANTITY + ", " + DatabaseConfig.COL_EXPIRY_DATE + ", " + DatabaseConfig.COL_EXPIRY_DAY +
+                " FROM " + DatabaseConfig.TABLE_FOOD_ITEMS + " ORDER BY " + DatabaseConfig.COL_NAME)) {
+            statement.setFetchSize(FETCH_SIZE);
+            try (ResultSet rs = statement.executeQuery()) {
+                long rows = 0;
+                while (rs.next()) {
+                    int quantity = rs.getInt(4);
+                    int expiryDay = rs.getInt(6);
+                    if (rs.wasNull()) expiryDay = FoodItem.NO_EXPIRY;
+                    out.write(Integer.toString(rs.getInt(1)));
+                    out.write(',');
+                    writeField(out, rs.getString(2));
+                    out.write(',');
+                    writeField(out, rs.getString(3));
+                    out.write(',');
+                    out.write(Integer.toString(quantity));
+                    out.write(',');
+                    writeField(out, rs.getString(5));
+                    out.write(',');
+                    // Same wording as the dashboards: low stock is appended to an expiry alert
+                    StockStatus status = StockStatus.of(expiryDay, quantity, today);
+                    if (status != StockStatus.LOW_STOCK && quantity < FoodItem.LOW_STOCK_THRESHOLD) {
+                        writeField(out, status.getLabel() + ", " + StockStatus.LOW_STOCK.getLabel());
+                    } else {
+                        out.write(status.getLabel());
+                    }
+                    out.write('\n');
+                    rows = step(rows, total, cancelled, progress);
+                }
+                progress.update(rows, total);
+                return rows;
+            }
+        }
+    }
+
+    private static long writeOrders(Connection connection, String ngoUsername, Writer out, BooleanSupplier cancelled,
+                                    Progress progress) throws IOException, SQLException {
+        String where = ngoUsername != null ? " WHERE ngo_username = ?" : "";
+        // Archived orders included: an export is the full history
+        long total = count(connection, "SELECT COUNT(*) FROM orders" + where, ngoUsername) +
+                count(connection, "SELECT COUNT(*) FROM orders_archive" + where, ngoUsername);
+        out.write("Order ID,NGO,Item ID,Item,Quantity,Order Date,Completed\n");
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT id, ngo_username, item_id, " + Catalog.PRODUCT_NAME + ", quantity, order_date, completed FROM orders" + where +
+                " UNION ALL SELECT id, ngo_username, item_id, " + Catalog.PRODUCT_NAME + ", quantity, order_date, 1 FROM orders_archive" + where +
+                " ORDER BY id")) {
+            if (ngoUsername != null) {
+                statement.setString(1, ngoUsername);
+                statement.setString(2, ngoUsername);
+            }
+            statement.setFetchSize(FETCH_SIZE);
+            try (ResultSet rs = statement.executeQuery()) {
+                long rows = 0;
+                while (rs.next()) {
+                    out.write(Integer.toString(rs.getInt(1)));
+                    out.write(',');
+                    writeField(out, rs.getString(2));
+                    out.write(',');
+                    out.write(Integer.toString(rs.getInt(3)));
+                    out.write(',');
+                    writeField(out, rs.getString(4));
+                    out.write(',');
+                    out.write(Integer.toString(rs.getInt(5)));
+                    out.write(',');
+                    writeField(out, rs.getString(6));
+                    out.write(',');
+                    out.write(rs.getInt(7) != 0 ? "Yes" : "No");
+                    out.write('\n');
+                    rows = step(rows, total, cancelled, progress);
+                }
+                progress.update(rows, total);
+                return rows;
+            }
+        }
+    }
+
+    private static long step(long rows, long total, BooleanSupplier cancelled, Progress progress) {
+        rows++;
+        if (rows % PROGRESS_EVERY == 0) {
+            if (cancelled.getAsBoolean()) throw new CancellationException("Export cancelled");
+            progress.update(rows, total);
+        }
+        return rows;
+    }
+
+    private static long count(Connection connection, String sql, String param) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            if (param != null) statement.setString(1, param);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    /** Writes one field per RFC 4180: quoted, with quotes doubled, only when it needs to be. */
+    static void writeField(Writer out, String value) throws IOException {
+        if (value == null || value.isEmpty()) return;
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            out.write(value);
+            return;
+        }
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') out.write('"');
+            out.write(c);
+        }
+        out.write('"');
+    }
+}
@@ -0,0 +1,287 @@
+package database;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+
+import model.FoodItem;
+
+/**
+ * Bulk import of supplier stock from a CSV manifest (gzip-compressed when the name ends in ".gz").
+ *
+ * The file is parsed as a stream, {@link DatabaseConfig#IMPORT_BATCH_SIZE} records at a time.
+ * Each batch is validated in parallel, then written with JDBC batches in one transaction, so a
+ * cancelled or failed import keeps the batches committed before it. Invalid rows are reported
+ * with their line number and skipped. Exports from {@link CsvExporter} import as they are.
+ * Runs on the calling thread; callers put it in the background.
+ */
+public final class CsvImporter {
+    private static final int MAX_REPORTED_ERRORS = 1000;
+
+    /** What to do with a row whose (name, category, expiry date) lot already exists. */
+    public enum Mode {
+        /** Always add a new row. */
+        INSERT,
+        /** Add the row's quantity to the existing lot. */
+        ADD_QUANTITY,
+        /** Set the existing lot's quantity to the row's. */
+        REPLACE_QUANTITY
+    }
+
+    private CsvImporter() {}
+
+    /**
+     * Imports {@code source}. Progress is reported in bytes of the file read so far.
+     *
+     * @throws CancellationException if {@code cancelled} turns true; earlier batches stay imported
+     */
+    public static ImportResult importFoodItems(Path source, Mode mode, BooleanSupplier cancelled,
+                                               CsvExporter.Progress progress) throws IOException, SQLException {
+        long size = Files.size(source);
+        ImportResult result = new ImportResult();
+        try (CountingInputStream raw = new CountingInputStream(Files.newInputStream(source));
+             CsvReader csv = new CsvReader(new InputStreamReader(
+                     source.getFileName().toString().endsWith(".gz") ? new GZIPInputStream(raw, 1 << 16) : raw,
+                     StandardCharsets.UTF_8))) {
+            List<String> header = csv.next();
+            if (header == null) return result;
+            Columns columns = Columns.of(header);
+
+            List<String[]> records = new ArrayList<>(DatabaseConfig.IMPORT_BATCH_SIZE);
+            List<Integer> lines = new ArrayList<>(DatabaseConfig.IMPORT_BATCH_SIZE);
+            List<String> record;
+            while ((record = csv.next()) != null) {
+                if (record.size() == 1 && record.get(0).trim().isEmpty()) continue; // blank line
+                records.add(record.toArray(new String[0]));
+                lines.add(csv.recordLine());
+                if (records.size() == DatabaseConfig.IMPORT_BATCH_SIZE) {
+                    if (cancelled.getAsBoolean()) throw new CancellationException("Import cancelled");
+                    importBatch(records, lines, columns, mode, result);
+                    records.clear();
+                    lines.clear();
+                    progress.update(raw.count, size);
+                }
+            }
+            if (!records.isEmpty()) importBatch(records, lines, columns, mode, result);
+            progress.update(size, size);
+        }
+        return result;
+    }
+
+    private static void importBatch(List<String[]> records, List<Integer> lines, Columns columns, Mode mode,
+                                    ImportResult result) throws SQLException {
+        // Parsing and validation are independent per row; only the write is serial
+        Object[] parsed = IntStream.range(0, records.size()).parallel()
+                .mapToObj(i -> columns.parse(records.get(i)))
+                .toArray();
+        List<FoodItem> lots = new ArrayList<>(parsed.length);
+        for (int i = 0; i < parsed.length; i++) {
+            if (parsed[i] instanceof FoodItem) {
+                lots.add((FoodItem) parsed[i]);
+            } else {
+                result.reject(lines.get(i), (String) parsed[i]);
+            }
+        }
+        if (mode != Mode.INSERT) lots = mergeLots(lots, mode);
+        List<FoodItem> batch = lots;
+        int updated = DBUtil.awaitWrite(c -> DBUtil.importFoodItemBatch(c, batch, mode));
+        if (updated > 0) StockLedger.invalidateAll();
+        result.updated += updated;
+        result.inserted += batch.size() - updated;
+    }
+
+    /** Collapses repeats of a lot within one batch, so the update-then-insert write cannot insert it twice. */
+    private static List<FoodItem> mergeLots(List<FoodItem> lots, Mode mode) {
+        Map<List<String>, FoodItem> byLot = new LinkedHashMap<>();
+        for (FoodItem lot : lots) {
+            List<String> key = List.of(lot.getName(), lot.getCategory(), lot.getExpiryDate());
+            FoodItem earlier = byLot.putIfAbsent(key, lot);
+            if (earlier != null) {
+                earlier.setQuantity(mode == Mode.ADD_QUANTITY ? earlier.getQuantity() + lot.getQuantity() : lot.getQuantity());
+            }
+        }
+        return new ArrayList<>(byLot.values());
+    }
+
+    /** Counts and rejected rows of one import. */
+    public static final class ImportResult {
+        private int inserted;
+        private int updated;
+        private int rejectedCount;
+        private final List<String> rejected = new ArrayList<>();
+
+        public int getInserted() { return inserted; }
+        public int getUpdated() { return updated; }
+        public int getRejectedCount() { return rejectedCount; }
+
+        /** "line N: reason" for the first rejected rows. */
+        public List<String> getRejected() { return Collections.unmodifiableList(rejected); }
+
+        private void reject(int line, String reason) {
+            rejectedCount++;
+            if (rejected.size() < MAX_REPORTED_ERRORS) rejected.add("line " + line + ": " + reason);
+        }
+    }
+
+    /** Positions of the known columns in the header; unknown columns (e.g. ID, Status) are ignored. */
+    private static final class Columns {
+        private int nameAt = -1, categoryAt = -1, quantityAt = -1, expiryAt = -1;
+
+        static Columns of(List<String> header) throws IOException {
+            Columns columns = new Columns();
+            for (int i = 0; i < header.size(); i++) {
+                String column = header.get(i).trim().toLowerCase(Locale.ROOT).replace('_', ' ');
+                switch (column) {
+                    case "name": columns.nameAt = i; break;
+                    case "category": columns.categoryAt = i; break;
+                    case "quantity": case "qty": columns.quantityAt = i; break;
+                    case "expiry date": case "expiry": columns.expiryAt = i; break;
+                    default: break;
+                }
+            }
+            if (columns.nameAt < 0 || columns.quantityAt < 0) {
+                throw new IOException("CSV header must have Name and Quantity columns");
+            }
+            return columns;
+        }
+
+        /** The row as a lot to import, or the reason it is rejected. */
+        Object parse(String[] record) {
+            String name = field(record, nameAt);
+            if (name.isEmpty()) return "name is empty";
+            int qty;
+            try {
+                qty = Integer.parseInt(field(record, quantityAt));
+            } catch (NumberFormatException e) {
+                return "quantity is not a number";
+            }
+            if (qty < 0) return "quantity is negative";
+            String expiryDate = field(record, expiryAt);
+            int expiryDay = FoodItem.parseExpiryDay(expiryDate);
+            if (!expiryDate.isEmpty() && expiryDay == FoodItem.NO_EXPIRY) return "expiry date is not YYYY-MM-DD";
+            return new FoodItem(0, name, field(record, categoryAt), qty, expiryDate, expiryDay);
+        }
+
+        private static String field(String[] record, int index) {
+            return index >= 0 && index < record.length ? record[index].trim() : "";
+        }
+    }
+
+    /** Minimal streaming RFC 4180 reader: quoted fields may hold commas, doubled quotes and line breaks. */
+    private static final class CsvReader implements AutoCloseable {
+        private final Reader in;
+        private int line = 1;
+        private int recordLine;
+        private int pending = -2; // one character of lookahead; -2 when empty
+
+        CsvReader(Reader in) {
+            this.in = new BufferedReader(in, 1 << 16);
+        }
+
+        int recordLine() {
+            return recordLine;
+        }
+
+        /** The next record, or null at the end of input. */
+        List<String> next() throws IOException {
+            int c = read();
+            if (c == -1) return null;
+            if (line == 1 && recordLine == 0 && c == '\uFEFF') c = read(); // byte order mark
+            recordLine = line;
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            while (true) {
+                if (quoted) {
+                    if (c == -1) throw new IOException("Unterminated quoted field starting on line " + recordLine);
+                    if (c == '"') {
+                        int after = read();
+                        if (after == '"') {
+                            field.append('"');
+                        } else {
+                            quoted = false;
+                            c = after;
+                            continue;
+                        }
+                    } else {
+                        if (c == '\n') line++;
+                        field.append((char) c);
+                    }
+                } else if (c == '"' && field.length() == 0) {
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else if (c == '\r' || c == '\n' || c == -1) {
+                    if (c == '\r') {
+                        int after = read();
+                        if (after != '\n') unread(after);
+                    }
+                    if (c != -1) line++;
+                    fields.add(field.toString());
+                    return fields;
+                } else {
+                    field.append((char) c);
+                }
+                c = read();
+            }
+        }
+
+        private int read() throws IOException {
+            if (pending != -2) {
+                int c = pending;
+                pending = -2;
+                return c;
+            }
+            return in.read();
+        }
+
+        private void unread(int c) {
+            pending = c;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+    }
+}
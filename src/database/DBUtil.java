@@ -1,13 +1,50 @@
 package database;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import model.FoodItem;
+import model.Order;
+import model.OrderLine;
+import model.PrefixIndex;
+import model.SearchIndex;
 
 public final class DBUtil {
+    // Qualified, so that sorts which join another table (see InventorySort#source) can use them too
+    private static final String FOOD_ITEM_COLUMNS =
+            "SELECT " + InventorySort.ITEM_ID + ", " + InventorySort.ITEMS + "." + DatabaseConfig.COL_NAME + ", " +
+            Catalog.CATEGORY_NAME + " AS " + DatabaseConfig.COL_CATEGORY + ", " +
+            InventorySort.ITEMS + "." + DatabaseConfig.COL_QUANTITY + ", " +
+            InventorySort.ITEMS + "." + DatabaseConfig.COL_EXPIRY_DATE + ", " + InventorySort.ITEMS + "." + DatabaseConfig.COL_EXPIRY_DAY + ", " +
+            InventorySort.ITEMS + "." + DatabaseConfig.COL_VERSION;
+
+    private static final String FOOD_ITEM_SELECT = FOOD_ITEM_COLUMNS + " FROM " + DatabaseConfig.TABLE_FOOD_ITEMS;
+
+    private static final String ORDER_SELECT =
+            "SELECT id, ngo_username, item_id, " + Catalog.PRODUCT_NAME + " AS item_name, quantity, order_date FROM orders";
+    // Columns orders and orders_archive share
+    private static final String ARCHIVED_ORDER_COLUMNS =
+            "id, ngo_username, item_id, " + DatabaseConfig.COL_PRODUCT_ID + ", quantity, order_date, completed_date";
+
+    static final String TABLE_FOOD_ITEMS_FTS = DatabaseConfig.TABLE_FOOD_ITEMS + "_fts";
+
+    private static ConnectionPool pool;
+    private static WriteQueue writeQueue;
+
     private DBUtil() {}
 
     public static void initializeDatabase() {
@@ -20,48 +57,23 @@ public final class DBUtil {
         // Ensure resources directory exists
         ensureResourcesDirectoryExists();
         
-        // Create the table
         try (Connection connection = getConnection(); Statement statement = connection.createStatement()) {
-            statement.executeUpdate(
-                    "CREATE TABLE IF NOT EXISTS " + DatabaseConfig.TABLE_FOOD_ITEMS + " (" +
-                            DatabaseConfig.COL_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                            DatabaseConfig.COL_NAME + " TEXT NOT NULL, " +
-                            DatabaseConfig.COL_CATEGORY + " TEXT, " +
-                            DatabaseConfig.COL_QUANTITY + " INTEGER DEFAULT 0, " +
-                            DatabaseConfig.COL_EXPIRY_DATE + " TEXT" +
-                            ")"
-            );
-
-            // Users table: username (PK), role (NGO or SUPPLIER)
-            statement.executeUpdate(
-                "CREATE TABLE IF NOT EXISTS users (" +
-                "username TEXT PRIMARY KEY, " +
-                "role TEXT NOT NULL CHECK(role IN ('NGO','SUPPLIER'))" +
-                ")"
-            );
-
-            // Orders table
-            statement.executeUpdate(
-                "CREATE TABLE IF NOT EXISTS orders (" +
-                "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                "ngo_username TEXT NOT NULL, " +
-                "item_id INTEGER NOT NULL, " +
-                "item_name TEXT NOT NULL, " +
-                "quantity INTEGER NOT NULL, " +
-                "order_date TEXT NOT NULL, " +
-                "completed INTEGER NOT NULL DEFAULT 0, " +
-                "FOREIGN KEY (ngo_username) REFERENCES users(username) ON DELETE CASCADE" +
-                ")"
-            );
-            // Backward-compatibility: add completed column if existing table lacks it
-            try {
-                statement.executeUpdate("ALTER TABLE orders ADD COLUMN completed INTEGER NOT NULL DEFAULT 0");
-            } catch (SQLException ignore) { /* column may already exist */ }
+            SchemaMigrations.migrate(connection);
+            pruneTombstones(statement);
         } catch (SQLException e) {
             throw new RuntimeException("Failed to initialize database table", e);
         }
+        writeQueue(); // start the writer now: it also watches for changes made by other processes
     }
-    
+
+    /** Keeps the tombstone table bounded; readers whose cursor predates the floor reload fully. */
+    private static void pruneTombstones(Statement statement) throws SQLException {
+        statement.executeUpdate(
+            "UPDATE change_counter SET tombstone_floor = MAX(tombstone_floor, seq - " + DatabaseConfig.TOMBSTONE_RETENTION + ") WHERE id = 1");
+        statement.executeUpdate(
+            "DELETE FROM deleted_rows WHERE change_seq <= (SELECT tombstone_floor FROM change_counter WHERE id = 1)");
+    }
+
     private static void ensureResourcesDirectoryExists() {
         java.io.File resourcesDir = new java.io.File("resources");
         if (!resourcesDir.exists()) {
@@ -69,30 +81,639 @@ public final class DBUtil {
         }
     }
 
+    private static synchronized ConnectionPool pool() {
+        if (pool == null) {
+            pool = new ConnectionPool(DatabaseConfig.JDBC_URL, DatabaseConfig.POOL_READERS,
+                    DatabaseConfig.POOL_ACQUIRE_TIMEOUT_MS);
+        }
+        return pool;
+    }
+
+    /** Pooled writer connection; closing it returns it to the pool. Safe for reads too. */
     public static Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(DatabaseConfig.JDBC_URL);
+        return pool().acquireWriter();
     }
 
-    public static ResultSet selectAllFoodItems(Connection connection) throws SQLException {
-        PreparedStatement statement = connection.prepareStatement(
-            "SELECT " + DatabaseConfig.COL_ID + ", " + DatabaseConfig.COL_NAME + ", " + 
-            DatabaseConfig.COL_CATEGORY + ", " + DatabaseConfig.COL_QUANTITY + ", " + 
-            DatabaseConfig.COL_EXPIRY_DATE + " FROM " + DatabaseConfig.TABLE_FOOD_ITEMS
-        );
-        return statement.executeQuery();
+    /** Pooled read-only connection for queries; several can be open at once. */
+    public static Connection getReadConnection() throws SQLException {
+        return pool().acquireReader();
     }
 
-    public static void insertFoodItem(Connection connection, String name, String category, int quantity, String expiryDate) throws SQLException {
+    public static synchronized void shutdown() {
+        if (writeQueue != null) {
+            writeQueue.close();
+            writeQueue = null;
+        }
+        if (pool != null) {
+            pool.close();
+            pool = null;
+        }
+    }
+
+    private static synchronized WriteQueue writeQueue() {
+        if (writeQueue == null) {
+            writeQueue = new WriteQueue();
+        }
+        return writeQueue;
+    }
+
+    /**
+     * Queues a mutation for the single writer thread, which commits it together with whatever
+     * else is pending. {@code work} must not manage the transaction itself; use {@link #inTransaction}
+     * for a unit that has to roll back as a whole.
+     */
+    public static <T> CompletableFuture<T> submitWrite(SqlWork<T> work) {
+        WriteQueue queue = writeQueue();
+        if (queue.isWriterThread()) {
+            // Already inside a queued command: waiting on the queue would deadlock
+            try (Connection connection = getConnection()) {
+                return CompletableFuture.completedFuture(inTransaction(connection, work));
+            } catch (SQLException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        return queue.submit(work);
+    }
+
+    /** {@link #submitWrite} for blocking callers. */
+    public static <T> T awaitWrite(SqlWork<T> work) throws SQLException {
+        try {
+            return submitWrite(work).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database write", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) throw (SQLException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new SQLException(cause);
+        }
+    }
+
+    /**
+     * Runs {@code work} as one unit: its own transaction on an autocommit connection, or a savepoint
+     * inside a transaction that is already open (such as a group commit).
+     */
+    static <T> T inTransaction(Connection connection, SqlWork<T> work) throws SQLException {
+        if (!connection.getAutoCommit()) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("SAVEPOINT unit");
+            }
+            try {
+                T result = work.run(connection);
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("RELEASE unit");
+                }
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("ROLLBACK TO unit");
+                    statement.execute("RELEASE unit");
+                }
+                Catalog.rolledBack();
+                throw e;
+            }
+        }
+        connection.setAutoCommit(false);
+        try {
+            T result = work.run(connection);
+            connection.commit();
+            Catalog.committed();
+            return result;
+        } catch (SQLException | RuntimeException e) {
+            connection.rollback();
+            Catalog.rolledBack();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    /** Runs {@code work} on the writer connection, retrying with backoff on SQLITE_BUSY. */
+    public static <T> T withWriter(SqlWork<T> work) throws SQLException {
+        return withRetry(work, true);
+    }
+
+    /** Runs {@code work} on a reader connection, retrying with backoff on SQLITE_BUSY. */
+    public static <T> T withReader(SqlWork<T> work) throws SQLException {
+        return withRetry(work, false);
+    }
+
+    private static <T> T withRetry(SqlWork<T> work, boolean writer) throws SQLException {
+        long backoff = DatabaseConfig.BUSY_BACKOFF_MS;
+        for (int attempt = 0; ; attempt++) {
+            try (Connection connection = writer ? getConnection() : getReadConnection()) {
+                return work.run(connection);
+            } catch (SQLException e) {
+                if (!isBusy(e) || attempt >= DatabaseConfig.BUSY_RETRIES) throw e;
+            }
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while retrying a busy database operation", ie);
+            }
+            backoff *= 2;
+        }
+    }
+
+    /** Changes whenever a connection other than {@code connection} commits to the database file. */
+    static long dataVersion(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("PRAGMA data_version")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    static boolean isBusy(SQLException e) {
+        int primary = e.getErrorCode() & 0xff; // strip extended result code bits
+        if (primary == 5 || primary == 6) return true; // SQLITE_BUSY, SQLITE_LOCKED
+        String message = e.getMessage();
+        return message != null && (message.contains("SQLITE_BUSY") || message.contains("database is locked"));
+    }
+
+    /**
+     * Runs {@code sql} and hands each row to {@code handler} as it is read, mapped by {@code mapper}.
+     * {@code params} are bound in order; {@code fetchSize} is the driver's row-buffer hint (0 for its
+     * default). Cursor and statement are closed before this returns, also when the handler throws.
+     * Returns the number of rows.
+     */
+    public static <T> long stream(Connection connection, String sql, int fetchSize, RowMapper<T> mapper,
+                                  RowHandler<T> handler, Object... params) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (int i = 0; i < params.length; i++) statement.setObject(i + 1, params[i]);
+            statement.setFetchSize(fetchSize);
+            try (ResultSet rs = statement.executeQuery()) {
+                long rows = 0;
+                while (rs.next()) {
+                    handler.handle(mapper.map(rs));
+                    rows++;
+                }
+                return rows;
+            }
+        }
+    }
+
+    /** {@link #stream} into a list. */
+    public static <T> List<T> query(Connection connection, String sql, RowMapper<T> mapper, Object... params) throws SQLException {
+        List<T> rows = new ArrayList<>();
+        stream(connection, sql, 0, mapper, rows::add, params);
+        return rows;
+    }
+
+    /** Streams every food item in id order, {@code fetchSize} rows at a time. */
+    public static long forEachFoodItem(Connection connection, int fetchSize, RowHandler<FoodItem> handler) throws SQLException {
+        return stream(connection, FOOD_ITEM_SELECT + " ORDER BY " + DatabaseConfig.COL_ID, fetchSize, DBUtil::toFoodItem, handler);
+    }
+
+    /** Loads every food item ordered by {@code orderBy} (a column list such as "name" or "id DESC"). */
+    public static List<FoodItem> listFoodItems(Connection connection, String orderBy) throws SQLException {
+        return query(connection, FOOD_ITEM_SELECT + " ORDER BY " + orderBy, DBUtil::toFoodItem);
+    }
+
+    /**
+     * Keyset page: the {@code limit} rows that follow position (afterKey, afterId) in the given order.
+     * Pass a null afterKey for the first page.
+     */
+    public static List<FoodItem> selectFoodItemsAfter(Connection connection, InventorySort sort, boolean ascending,
+                                                      Object afterKey, int afterId, int limit) throws SQLException {
+        String direction = ascending ? " ASC" : " DESC";
+        String where = "";
+        if (afterKey != null) {
+            String op = ascending ? " > " : " < ";
+            String bound = ascending ? " >= " : " <= ";
+            // The redundant bound on the sort expression alone lets SQLite seek its index; it does not
+            // seek on a row-value comparison
+            where = sort == InventorySort.ID
+                    ? " WHERE " + InventorySort.ITEM_ID + op + "?"
+                    : " WHERE " + sort.expression + bound + "? AND (" + sort.expression + ", " + InventorySort.ITEM_ID + ")" + op + "(?, ?)";
+        }
         try (PreparedStatement statement = connection.prepareStatement(
-                "INSERT INTO " + DatabaseConfig.TABLE_FOOD_ITEMS + "(" + 
-                DatabaseConfig.COL_NAME + ", " + DatabaseConfig.COL_CATEGORY + ", " + 
-                DatabaseConfig.COL_QUANTITY + ", " + DatabaseConfig.COL_EXPIRY_DATE + ") VALUES (?, ?, ?, ?)")) {
+                FOOD_ITEM_COLUMNS + " FROM " + sort.source + where +
+                " ORDER BY " + sort.expression + direction +
+                (sort == InventorySort.ID ? "" : ", " + InventorySort.ITEM_ID + direction) +
+                " LIMIT ?")) {
+            int index = 1;
+            if (afterKey != null) {
+                statement.setObject(index++, afterKey);
+                if (sort != InventorySort.ID) {
+                    statement.setObject(index++, afterKey);
+                    statement.setInt(index++, afterId);
+                }
+            }
+            statement.setInt(index, limit);
+            return readFoodItems(statement);
+        }
+    }
+
+    /** Offset page, used only when jumping to a page whose predecessor's keyset position is unknown. */
+    public static List<FoodItem> selectFoodItemsAt(Connection connection, InventorySort sort, boolean ascending,
+                                                   int offset, int limit) throws SQLException {
+        String direction = ascending ? " ASC" : " DESC";
+        try (PreparedStatement statement = connection.prepareStatement(
+                FOOD_ITEM_COLUMNS + " FROM " + sort.source +
+                " ORDER BY " + sort.expression + direction +
+                (sort == InventorySort.ID ? "" : ", " + InventorySort.ITEM_ID + direction) +
+                " LIMIT ? OFFSET ?")) {
+            statement.setInt(1, limit);
+            statement.setInt(2, offset);
+            return readFoodItems(statement);
+        }
+    }
+
+    /** In-stock items by name, capped at {@code limit} rows. */
+    public static List<FoodItem> listInStockFoodItems(Connection connection, int limit) throws SQLException {
+        return query(connection,
+                FOOD_ITEM_SELECT + " WHERE " + DatabaseConfig.COL_QUANTITY + " > 0" +
+                " ORDER BY " + DatabaseConfig.COL_NAME + ", " + DatabaseConfig.COL_ID + " LIMIT ?",
+                DBUtil::toFoodItem, limit);
+    }
+
+    /** In-stock items whose expiry day is today or earlier, oldest first. */
+    public static List<FoodItem> selectExpiredFoodItems(Connection connection, long today, int limit) throws SQLException {
+        return query(connection,
+                FOOD_ITEM_SELECT + " WHERE " + DatabaseConfig.COL_EXPIRY_DAY + " <= ?" +
+                " AND " + DatabaseConfig.COL_QUANTITY + " > 0" +
+                " ORDER BY " + DatabaseConfig.COL_EXPIRY_DAY + " LIMIT ?",
+                DBUtil::toFoodItem, today, limit);
+    }
+
+    /** In-stock items expiring after today and within {@code days} days, soonest first. */
+    public static List<FoodItem> selectExpiringFoodItems(Connection connection, long today, int days, int limit) throws SQLException {
+        return query(connection,
+                FOOD_ITEM_SELECT + " WHERE " + DatabaseConfig.COL_EXPIRY_DAY + " > ? AND " + DatabaseConfig.COL_EXPIRY_DAY + " <= ?" +
+                " AND " + DatabaseConfig.COL_QUANTITY + " > 0" +
+                " ORDER BY " + DatabaseConfig.COL_EXPIRY_DAY + " LIMIT ?",
+                DBUtil::toFoodItem, today, today + days, limit);
+    }
+
+    /** Items with a quantity below {@code threshold} (out-of-stock rows included), lowest first. */
+    public static List<FoodItem> selectLowStockFoodItems(Connection connection, int threshold, int limit) throws SQLException {
+        return query(connection,
+                FOOD_ITEM_SELECT + " WHERE " + DatabaseConfig.COL_QUANTITY + " < ?" +
+                " ORDER BY " + DatabaseConfig.COL_QUANTITY + " LIMIT ?",
+                DBUtil::toFoodItem, threshold, limit);
+    }
+
+    /** Alert counts for the dashboards; each count is a range scan over one index. */
+    public static StockAlerts countStockAlerts(Connection connection, long today) throws SQLException {
+        return inSnapshot(connection, () -> {
+            String inStock = " AND " + DatabaseConfig.COL_QUANTITY + " > 0";
+            int expired = count(connection, DatabaseConfig.COL_EXPIRY_DAY + " <= ?" + inStock, today);
+            int expiring = count(connection, DatabaseConfig.COL_EXPIRY_DAY + " > ? AND " + DatabaseConfig.COL_EXPIRY_DAY + " <= ?" + inStock,
+                    today, today + FoodItem.EXPIRING_SOON_DAYS);
+            int lowStock = count(connection, DatabaseConfig.COL_QUANTITY + " < ?", FoodItem.LOW_STOCK_THRESHOLD);
+            return new StockAlerts(expired, expiring, lowStock);
+        });
+    }
+
+    /**
+     * Totals per category, per expiry week for {@code weeks} weeks from {@code today} (an epoch day),
+     * and for the {@code topNgos} NGOs that ordered the most, from the summary tables: the cost grows
+     * with the number of categories, weeks and NGOs, not with the number of items or orders.
+     */
+    public static StockSummary selectStockSummary(Connection connection, long today, int weeks, int topNgos) throws SQLException {
+        return inSnapshot(connection, () -> {
+            List<StockSummary.Total> categories = query(connection,
+                    "SELECT c.name, s.items, s.quantity FROM " + Aggregates.CATEGORY_STOCK + " s JOIN " + DatabaseConfig.TABLE_CATEGORIES +
+                    " c ON c.id = s." + DatabaseConfig.COL_CATEGORY_ID + " ORDER BY c.name",
+                    rs -> new StockSummary.Total(rs.getString(1), rs.getInt(2), rs.getLong(3)));
+            long thisWeek = Aggregates.weekOf(today);
+            List<StockSummary.Total> expiryWeeks = query(connection,
+                    "SELECT week, items, quantity FROM " + Aggregates.EXPIRY_WEEK_STOCK + " WHERE week >= ? AND week < ? ORDER BY week",
+                    rs -> new StockSummary.Total(LocalDate.ofEpochDay(Aggregates.firstDayOf(rs.getLong(1))).toString(), rs.getInt(2), rs.getLong(3)),
+                    thisWeek, thisWeek + weeks);
+            StockSummary.Total expired = query(connection,
+                    "SELECT IFNULL(SUM(items), 0), IFNULL(SUM(quantity), 0) FROM " + Aggregates.EXPIRY_WEEK_STOCK + " WHERE week < ?",
+                    rs -> new StockSummary.Total("expired", rs.getInt(1), rs.getLong(2)), thisWeek).get(0);
+            List<StockSummary.Total> ngos = query(connection,
+                    "SELECT ngo_username, items, quantity FROM " + Aggregates.NGO_DEMAND + " ORDER BY quantity DESC LIMIT ?",
+                    rs -> new StockSummary.Total(rs.getString(1), rs.getInt(2), rs.getLong(3)), topNgos);
+            return new StockSummary(categories, expiryWeeks, expired, ngos);
+        });
+    }
+
+    /** Names of the summary tables that disagree with the items and orders they summarize. */
+    public static List<String> verifyAggregates(Connection connection) throws SQLException {
+        return inSnapshot(connection, () -> Aggregates.verify(connection));
+    }
+
+    /** Recomputes the summary tables from the items and orders. */
+    public static void rebuildAggregates(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            Aggregates.rebuild(statement);
+        }
+    }
+
+    private static int count(Connection connection, String where, long... args) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT COUNT(*) FROM " + DatabaseConfig.TABLE_FOOD_ITEMS + " WHERE " + where)) {
+            for (int i = 0; i < args.length; i++) statement.setLong(i + 1, args[i]);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    /** Builds the in-memory name/category search index from a streamed, name-ordered scan. */
+    public static SearchIndex loadSearchIndex(Connection connection) throws SQLException {
+        return inSnapshot(connection, () -> {
+            SearchIndex index = new SearchIndex();
+            index.setSeq(currentChangeSeq(connection));
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "SELECT " + DatabaseConfig.COL_ID + ", " + DatabaseConfig.COL_NAME + ", " + Catalog.CATEGORY_NAME +
+                    " FROM " + DatabaseConfig.TABLE_FOOD_ITEMS + " ORDER BY " + DatabaseConfig.COL_NAME)) {
+                statement.setFetchSize(1000);
+                try (ResultSet rs = statement.executeQuery()) {
+                    while (rs.next()) {
+                        index.put(rs.getInt(1), rs.getString(2), rs.getString(3));
+                    }
+                }
+            }
+            return index;
+        });
+    }
+
+    /** Builds the in-memory name prefix index, streaming rows in its own key order so it only appends. */
+    public static PrefixIndex loadPrefixIndex(Connection connection) throws SQLException {
+        return inSnapshot(connection, () -> {
+            PrefixIndex index = new PrefixIndex();
+            index.setSeq(currentChangeSeq(connection));
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "SELECT " + DatabaseConfig.COL_ID + ", " + DatabaseConfig.COL_NAME + ", " + DatabaseConfig.COL_QUANTITY +
+                    " FROM " + DatabaseConfig.TABLE_FOOD_ITEMS +
+                    " ORDER BY LOWER(TRIM(" + DatabaseConfig.COL_NAME + ")), " + DatabaseConfig.COL_ID)) {
+                statement.setFetchSize(1000);
+                try (ResultSet rs = statement.executeQuery()) {
+                    while (rs.next()) {
+                        index.put(rs.getInt(1), rs.getString(2), rs.getInt(3));
+                    }
+                }
+            }
+            return index;
+        });
+    }
+
+    /** Rows for the given ids, in the order the ids are given; ids that no longer exist are skipped. */
+    public static List<FoodItem> selectFoodItemsByIds(Connection connection, int[] ids) throws SQLException {
+        Map<Integer, FoodItem> byId = new HashMap<>();
+        final int chunk = 500; // stay well below SQLite's bound-parameter limit
+        for (int from = 0; from < ids.length; from += chunk) {
+            int to = Math.min(ids.length, from + chunk);
+            StringBuilder sql = new StringBuilder(FOOD_ITEM_SELECT).append(" WHERE ").append(DatabaseConfig.COL_ID).append(" IN (");
+            for (int i = from; i < to; i++) sql.append(i == from ? "?" : ",?");
+            sql.append(")");
+            try (PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+                for (int i = from; i < to; i++) statement.setInt(i - from + 1, ids[i]);
+                for (FoodItem item : readFoodItems(statement)) byId.put(item.getId(), item);
+            }
+        }
+        List<FoodItem> result = new ArrayList<>(byId.size());
+        for (int id : ids) {
+            FoodItem item = byId.get(id);
+            if (item != null) result.add(item);
+        }
+        return result;
+    }
+
+    /** Row count, highest id and change sequence, read from one snapshot. */
+    public static InventoryHead selectInventoryHead(Connection connection) throws SQLException {
+        return inSnapshot(connection, () -> {
+            long seq = currentChangeSeq(connection);
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "SELECT COUNT(*), IFNULL(MAX(" + DatabaseConfig.COL_ID + "), 0) FROM " + DatabaseConfig.TABLE_FOOD_ITEMS);
+                 ResultSet rs = statement.executeQuery()) {
+                rs.next();
+                return new InventoryHead(rs.getInt(1), rs.getInt(2), seq);
+            }
+        });
+    }
+
+    /** Food items inserted, updated or deleted after change sequence {@code sinceSeq}. */
+    public static ChangeSet<FoodItem> selectFoodItemChanges(Connection connection, long sinceSeq) throws SQLException {
+        return inSnapshot(connection, () -> {
+            long seq = currentChangeSeq(connection);
+            if (seq == sinceSeq) return new ChangeSet<>(seq, true, new ArrayList<>(), new HashSet<>());
+            if (sinceSeq < tombstoneFloor(connection)) return ChangeSet.<FoodItem>reloadRequired(seq);
+            List<FoodItem> changed = query(connection, FOOD_ITEM_SELECT + " WHERE change_seq > ? AND change_seq <= ?",
+                    DBUtil::toFoodItem, sinceSeq, seq);
+            return new ChangeSet<>(seq, true, changed, deletedIds(connection, DatabaseConfig.TABLE_FOOD_ITEMS, sinceSeq, seq));
+        });
+    }
+
+    /**
+     * Pending orders inserted or updated after {@code sinceSeq}; orders that were deleted or completed
+     * come back as removed ids. A null ngoUsername means all NGOs.
+     */
+    public static ChangeSet<Order> selectOrderChanges(Connection connection, long sinceSeq, String ngoUsername) throws SQLException {
+        return inSnapshot(connection, () -> {
+            long seq = currentChangeSeq(connection);
+            if (seq == sinceSeq) return new ChangeSet<>(seq, true, new ArrayList<>(), new HashSet<>());
+            if (sinceSeq < tombstoneFloor(connection)) return ChangeSet.<Order>reloadRequired(seq);
+            List<Order> changed = new ArrayList<>();
+            Set<Integer> removed = deletedIds(connection, "orders", sinceSeq, seq);
+            try (PreparedStatement ps = connection.prepareStatement(
+                    "SELECT id, ngo_username, item_id, " + Catalog.PRODUCT_NAME + " AS item_name, quantity, order_date, completed FROM orders " +
+                    "WHERE change_seq > ? AND change_seq <= ?" + (ngoUsername != null ? " AND ngo_username = ?" : ""))) {
+                ps.setLong(1, sinceSeq);
+                ps.setLong(2, seq);
+                if (ngoUsername != null) ps.setString(3, ngoUsername);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        if (rs.getInt("completed") != 0) removed.add(rs.getInt("id"));
+                        else changed.add(toOrder(rs));
+                    }
+                }
+            }
+            return new ChangeSet<>(seq, true, changed, removed);
+        });
+    }
+
+    /** All pending orders (of one NGO, or all when ngoUsername is null) as a change set to sync from. */
+    public static ChangeSet<Order> selectPendingOrders(Connection connection, String ngoUsername) throws SQLException {
+        return inSnapshot(connection, () -> {
+            long seq = currentChangeSeq(connection);
+            List<Order> pending = ngoUsername != null ? selectOrdersForNgo(connection, ngoUsername) : selectAllOrders(connection);
+            return new ChangeSet<>(seq, true, pending, new HashSet<>());
+        });
+    }
+
+    public static long currentChangeSeq(Connection connection) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement("SELECT seq FROM change_counter WHERE id = 1");
+             ResultSet rs = ps.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private static long tombstoneFloor(Connection connection) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement("SELECT tombstone_floor FROM change_counter WHERE id = 1");
+             ResultSet rs = ps.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private static Set<Integer> deletedIds(Connection connection, String table, long sinceSeq, long seq) throws SQLException {
+        Set<Integer> ids = new HashSet<>();
+        try (PreparedStatement ps = connection.prepareStatement(
+                "SELECT row_id FROM deleted_rows WHERE table_name = ? AND change_seq > ? AND change_seq <= ?")) {
+            ps.setString(1, table);
+            ps.setLong(2, sinceSeq);
+            ps.setLong(3, seq);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) ids.add(rs.getInt(1));
+            }
+        }
+        return ids;
+    }
+
+    /** Runs several reads against one consistent snapshot of the database. */
+    private static <T> T inSnapshot(Connection connection, SqlCall<T> reads) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        if (autoCommit) connection.setAutoCommit(false);
+        try {
+            return reads.call();
+        } finally {
+            if (autoCommit) {
+                connection.commit();
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface SqlCall<T> {
+        T call() throws SQLException;
+    }
+
+    private static List<FoodItem> readFoodItems(PreparedStatement statement) throws SQLException {
+        List<FoodItem> result = new ArrayList<>();
+        try (ResultSet rs = statement.executeQuery()) {
+            while (rs.next()) {
+                result.add(toFoodItem(rs));
+            }
+        }
+        return result;
+    }
+
+    public static FoodItem toFoodItem(ResultSet rs) throws SQLException {
+        int expiryDay = rs.getInt(DatabaseConfig.COL_EXPIRY_DAY);
+        if (rs.wasNull()) expiryDay = FoodItem.NO_EXPIRY;
+        return new FoodItem(
+                rs.getInt(DatabaseConfig.COL_ID),
+                rs.getString(DatabaseConfig.COL_NAME),
+                rs.getString(DatabaseConfig.COL_CATEGORY),
+                rs.getInt(DatabaseConfig.COL_QUANTITY),
+                rs.getString(DatabaseConfig.COL_EXPIRY_DATE),
+                expiryDay,
+                rs.getInt(DatabaseConfig.COL_VERSION));
+    }
+
+    private static void setExpiryDay(PreparedStatement statement, int index, String expiryDate) throws SQLException {
+        int day = FoodItem.parseExpiryDay(expiryDate);
+        if (day == FoodItem.NO_EXPIRY) {
+            statement.setNull(index, Types.INTEGER);
+        } else {
+            statement.setInt(index, day);
+        }
+    }
+
+    private static final String FOOD_ITEM_INSERT =
+            "INSERT INTO " + DatabaseConfig.TABLE_FOOD_ITEMS + "(" +
+            DatabaseConfig.COL_NAME + ", " + DatabaseConfig.COL_CATEGORY_ID + ", " + DatabaseConfig.COL_PRODUCT_ID + ", " +
+            DatabaseConfig.COL_QUANTITY + ", " + DatabaseConfig.COL_EXPIRY_DATE + ", " +
+            DatabaseConfig.COL_EXPIRY_DAY + ") VALUES (?, ?, ?, ?, ?, ?)";
+
+    public static void insertFoodItem(Connection connection, String name, String category, int quantity, String expiryDate) throws SQLException {
+        int categoryId = Catalog.categoryId(connection, category);
+        int productId = Catalog.productId(connection, name, categoryId);
+        try (PreparedStatement statement = connection.prepareStatement(FOOD_ITEM_INSERT)) {
             statement.setString(1, name);
-            statement.setString(2, category);
-            statement.setInt(3, quantity);
-            statement.setString(4, expiryDate);
+            statement.setInt(2, categoryId);
+            statement.setInt(3, productId);
+            statement.setInt(4, quantity);
+            statement.setString(5, expiryDate);
+            setExpiryDay(statement, 6, expiryDate);
             statement.executeUpdate();
         }
+        LotBook.forget(productId);
+    }
+
+    /**
+     * Writes one batch of imported lots in a single transaction. With an upsert mode, each lot first
+     * updates an existing row with the same name, category and expiry date, and only the lots that
+     * matched nothing are inserted. Adding stock can leave several such rows; a lot only ever
+     * updates the oldest of them. Lots must be unique within the batch. Returns the number updated.
+     */
+    public static int importFoodItemBatch(Connection connection, List<FoodItem> lots, CsvImporter.Mode mode) throws SQLException {
+        return inTransaction(connection, c -> {
+            // Resolve each distinct category and product of the batch once
+            Map<String, Integer> categoryIds = new HashMap<>();
+            Map<List<Object>, Integer> productIds = new HashMap<>();
+            int[] lotCategory = new int[lots.size()];
+            int[] lotProduct = new int[lots.size()];
+            for (int i = 0; i < lots.size(); i++) {
+                FoodItem lot = lots.get(i);
+                Integer categoryId = categoryIds.get(lot.getCategory());
+                if (categoryId == null) {
+                    categoryId = Catalog.categoryId(connection, lot.getCategory());
+                    categoryIds.put(lot.getCategory(), categoryId);
+                }
+                List<Object> product = Arrays.asList(lot.getName(), categoryId);
+                Integer productId = productIds.get(product);
+                if (productId == null) {
+                    productId = Catalog.productId(connection, lot.getName(), categoryId);
+                    productIds.put(product, productId);
+                }
+                lotCategory[i] = categoryId;
+                lotProduct[i] = productId;
+            }
+            List<Integer> inserts = new ArrayList<>();
+            int updated = 0;
+            if (mode == CsvImporter.Mode.INSERT) {
+                for (int i = 0; i < lots.size(); i++) inserts.add(i);
+            } else if (!lots.isEmpty()) {
+                // Setting the quantity overwrites it like an edit does; adding is a delta like an order
+                String quantity = mode == CsvImporter.Mode.ADD_QUANTITY ? DatabaseConfig.COL_QUANTITY + " + ?"
+                        : "?, " + DatabaseConfig.COL_VERSION + " = " + DatabaseConfig.COL_VERSION + " + 1";
+                try (PreparedStatement statement = connection.prepareStatement(
+                        "UPDATE " + DatabaseConfig.TABLE_FOOD_ITEMS + " SET " + DatabaseConfig.COL_QUANTITY + " = " + quantity +
+                        " WHERE " + DatabaseConfig.COL_ID + " = (SELECT " + DatabaseConfig.COL_ID + " FROM " + DatabaseConfig.TABLE_FOOD_ITEMS +
+                        " WHERE " + DatabaseConfig.COL_NAME + " = ? AND " + DatabaseConfig.COL_CATEGORY_ID + " = ? AND " +
+                        DatabaseConfig.COL_EXPIRY_DATE + " IS ? ORDER BY " + DatabaseConfig.COL_ID + " LIMIT 1)")) {
+                    for (int i = 0; i < lots.size(); i++) {
+                        FoodItem lot = lots.get(i);
+                        statement.setInt(1, lot.getQuantity());
+                        statement.setString(2, lot.getName());
+                        statement.setInt(3, lotCategory[i]);
+                        statement.setString(4, lot.getExpiryDate());
+                        statement.addBatch();
+                    }
+                    int[] counts = statement.executeBatch();
+                    for (int i = 0; i < counts.length; i++) {
+                        if (counts[i] == 0) {
+                            inserts.add(i);
+                        } else {
+                            updated++;
+                        }
+                    }
+                }
+            }
+            try (PreparedStatement statement = connection.prepareStatement(FOOD_ITEM_INSERT)) {
+                for (int i : inserts) {
+                    FoodItem lot = lots.get(i);
+                    statement.setString(1, lot.getName());
+                    statement.setInt(2, lotCategory[i]);
+                    statement.setInt(3, lotProduct[i]);
+                    statement.setInt(4, lot.getQuantity());
+                    statement.setString(5, lot.getExpiryDate());
+                    setExpiryDay(statement, 6, lot.getExpiryDate());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+            productIds.values().forEach(LotBook::forget);
+            return updated;
+        });
     }
 
     public static void deleteFoodItemById(Connection connection, int id) throws SQLException {
@@ -102,40 +723,95 @@ public final class DBUtil {
             statement.executeUpdate();
         }
     }
+
+    /** Deletes the items with one statement batch in one transaction; returns the number that still existed. */
+    public static int deleteFoodItems(Connection connection, int[] ids) throws SQLException {
+        return updateEach(connection, "DELETE FROM " + DatabaseConfig.TABLE_FOOD_ITEMS + " WHERE " + DatabaseConfig.COL_ID + " = ?", ids);
+    }
     
-    public static void updateFoodItem(Connection connection, int id, String name, String category, int quantity, String expiryDate) throws SQLException {
+    /**
+     * Compare-and-set edit of one lot: writes the details and adds {@code quantityDelta} to the stock
+     * only if the lot is still at {@code expectedVersion} and the stock would not go negative.
+     * Orders placed meanwhile do not change the version, and the delta keeps what they took.
+     * Otherwise nothing is written and the result carries the lot as it is now.
+     */
+    public static UpdateResult updateFoodItem(Connection connection, int id, int expectedVersion, String name, String category,
+                                              int quantityDelta, String expiryDate) throws SQLException {
+        int categoryId = Catalog.categoryId(connection, category);
+        int productId = Catalog.productId(connection, name, categoryId);
         try (PreparedStatement statement = connection.prepareStatement(
-                "UPDATE " + DatabaseConfig.TABLE_FOOD_ITEMS + " SET " + 
-                DatabaseConfig.COL_NAME + " = ?, " + DatabaseConfig.COL_CATEGORY + " = ?, " + 
-                DatabaseConfig.COL_QUANTITY + " = ?, " + DatabaseConfig.COL_EXPIRY_DATE + " = ? WHERE " + 
-                DatabaseConfig.COL_ID + " = ?")) {
+                "UPDATE " + DatabaseConfig.TABLE_FOOD_ITEMS + " SET " +
+                DatabaseConfig.COL_NAME + " = ?, " + DatabaseConfig.COL_CATEGORY_ID + " = ?, " +
+                DatabaseConfig.COL_PRODUCT_ID + " = ?, " +
+                DatabaseConfig.COL_QUANTITY + " = " + DatabaseConfig.COL_QUANTITY + " + ?, " + DatabaseConfig.COL_EXPIRY_DATE + " = ?, " +
+                DatabaseConfig.COL_EXPIRY_DAY + " = ?, " + DatabaseConfig.COL_VERSION + " = " + DatabaseConfig.COL_VERSION + " + 1 WHERE " +
+                DatabaseConfig.COL_ID + " = ? AND " + DatabaseConfig.COL_VERSION + " = ? AND " + DatabaseConfig.COL_QUANTITY + " + ? >= 0")) {
             statement.setString(1, name);
-            statement.setString(2, category);
-            statement.setInt(3, quantity);
-            statement.setString(4, expiryDate);
-            statement.setInt(5, id);
-            statement.executeUpdate();
+            statement.setInt(2, categoryId);
+            statement.setInt(3, productId);
+            statement.setInt(4, quantityDelta);
+            statement.setString(5, expiryDate);
+            setExpiryDay(statement, 6, expiryDate);
+            statement.setInt(7, id);
+            statement.setInt(8, expectedVersion);
+            statement.setInt(9, quantityDelta);
+            if (statement.executeUpdate() == 0) {
+                List<FoodItem> current = selectFoodItemsByIds(connection, new int[] { id });
+                return UpdateResult.conflict(current.isEmpty() ? null : current.get(0));
+            }
         }
+        LotBook.forgetAll(); // the lot may have moved from another product
+        return UpdateResult.applied();
     }
     
-    public static ResultSet searchFoodItems(Connection connection, String searchTerm) throws SQLException {
+    /**
+     * Ranked full-text search: every word of {@code query} must match a word of the name or
+     * category by prefix ("ric bas" finds "Basmati Rice"). Returns the top {@code limit} rows by bm25.
+     */
+    public static List<FoodItem> searchFoodItems(Connection connection, String query, int limit) throws SQLException {
+        try (PreparedStatement statement = prepareFullTextSearch(connection, query, limit)) {
+            return readFoodItems(statement);
+        }
+    }
+
+    private static PreparedStatement prepareFullTextSearch(Connection connection, String query, int limit) throws SQLException {
+        String match = toFtsQuery(query);
+        // The same columns as every other item query, so toFoodItem finds all it reads
         PreparedStatement statement = connection.prepareStatement(
-            "SELECT " + DatabaseConfig.COL_ID + ", " + DatabaseConfig.COL_NAME + ", " + 
-            DatabaseConfig.COL_CATEGORY + ", " + DatabaseConfig.COL_QUANTITY + ", " + 
-            DatabaseConfig.COL_EXPIRY_DATE + " FROM " + DatabaseConfig.TABLE_FOOD_ITEMS + 
-            " WHERE " + DatabaseConfig.COL_NAME + " LIKE ? OR " + DatabaseConfig.COL_CATEGORY + " LIKE ?"
+            FOOD_ITEM_COLUMNS + " FROM " + TABLE_FOOD_ITEMS_FTS +
+            " JOIN " + InventorySort.ITEMS + " ON " + InventorySort.ITEM_ID + " = " + TABLE_FOOD_ITEMS_FTS + ".rowid" +
+            " WHERE " + (match.isEmpty() ? "0" : TABLE_FOOD_ITEMS_FTS + " MATCH ?") +
+            " ORDER BY rank LIMIT ?"
         );
-        String searchPattern = "%" + searchTerm + "%";
-        statement.setString(1, searchPattern);
-        statement.setString(2, searchPattern);
-        return statement.executeQuery();
+        int index = 1;
+        if (!match.isEmpty()) statement.setString(index++, match);
+        statement.setInt(index, limit);
+        return statement;
+    }
+
+    /** Turns free text into an FTS5 query of quoted prefix terms, so user input can never be FTS syntax. */
+    static String toFtsQuery(String text) {
+        StringBuilder match = new StringBuilder();
+        if (text == null) return "";
+        for (String token : text.split("[^\\p{L}\\p{N}]+")) {
+            if (token.isEmpty()) continue;
+            if (match.length() > 0) match.append(' ');
+            match.append('"').append(token).append("\"*");
+        }
+        return match.toString();
     }
 
     // Users
     public static void ensureUser(String username, String role) throws SQLException {
-        try (Connection connection = getConnection();
-             PreparedStatement ps = connection.prepareStatement(
-                     "INSERT INTO users(username, role) VALUES(?, ?) ON CONFLICT(username) DO UPDATE SET role=excluded.role")) {
+        awaitWrite(connection -> {
+            ensureUser(connection, username, role);
+            return null;
+        });
+    }
+
+    public static void ensureUser(Connection connection, String username, String role) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(
+                "INSERT INTO users(username, role) VALUES(?, ?) ON CONFLICT(username) DO UPDATE SET role=excluded.role")) {
             ps.setString(1, username);
             ps.setString(2, role);
             ps.executeUpdate();
@@ -143,66 +819,273 @@ public final class DBUtil {
     }
 
     public static String getUserRole(String username) throws SQLException {
-        try (Connection connection = getConnection();
-             PreparedStatement ps = connection.prepareStatement("SELECT role FROM users WHERE username = ?")) {
-            ps.setString(1, username);
-            try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) return rs.getString(1);
-                return null;
+        return withReader(connection -> {
+            try (PreparedStatement ps = connection.prepareStatement("SELECT role FROM users WHERE username = ?")) {
+                ps.setString(1, username);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) return rs.getString(1);
+                    return null;
+                }
             }
-        }
+        });
     }
 
     // Orders and stock adjustments
     public static void insertOrderAndDecrementStock(String ngoUsername, int itemId, String itemName, int qty, String orderDate) throws SQLException {
-        try (Connection connection = getConnection()) {
-            connection.setAutoCommit(false);
-            try (PreparedStatement orderPs = connection.prepareStatement(
-                        "INSERT INTO orders(ngo_username, item_id, item_name, quantity, order_date) VALUES(?,?,?,?,?)");
-                 PreparedStatement stockPs = connection.prepareStatement(
-                        "UPDATE " + DatabaseConfig.TABLE_FOOD_ITEMS + " SET " + DatabaseConfig.COL_QUANTITY + " = " + DatabaseConfig.COL_QUANTITY + " - ? WHERE " + DatabaseConfig.COL_ID + " = ? AND " + DatabaseConfig.COL_QUANTITY + " >= ?");) {
+        awaitWrite(connection -> {
+            insertOrderAndDecrementStock(connection, ngoUsername, itemId, itemName, qty, orderDate);
+            return null;
+        });
+    }
+
+    public static void insertOrderAndDecrementStock(Connection connection, String ngoUsername, int itemId, String itemName, int qty, String orderDate) throws SQLException {
+        CartResult result = placeOrderLines(connection, ngoUsername, List.of(new OrderLine(itemId, itemName, qty)), false, orderDate);
+        if (!result.isComplete()) {
+            throw new SQLException("Insufficient stock or item not found");
+        }
+    }
+
+    /**
+     * Places a multi-line order in one transaction: checks stock for every line, then decrements
+     * stock and inserts the orders with one batch each. Without {@code partialFill} any short line
+     * cancels the whole order; with it, each line takes what is left and only empty lines are dropped.
+     */
+    public static CartResult placeOrderLines(String ngoUsername, List<OrderLine> lines, boolean partialFill, String orderDate) throws SQLException {
+        return awaitWrite(connection -> placeOrderLines(connection, ngoUsername, lines, partialFill, orderDate));
+    }
+
+    public static CartResult placeOrderLines(Connection connection, String ngoUsername, List<OrderLine> lines,
+                                             boolean partialFill, String orderDate) throws SQLException {
+        return inTransaction(connection, c -> {
+            Map<Integer, Integer> available = selectQuantities(connection, lines);
+            List<OrderLine> placed = new ArrayList<>();
+            List<String> problems = new ArrayList<>();
+            for (OrderLine line : lines) {
+                Integer left = available.get(line.getItemId());
+                int fill = left == null || line.getQuantity() <= 0 ? 0 : Math.min(left, line.getQuantity());
+                if (left == null) {
+                    problems.add(line.getItemName() + ": item no longer exists");
+                } else if (line.getQuantity() <= 0) {
+                    problems.add(line.getItemName() + ": quantity must be positive");
+                } else if (fill < line.getQuantity()) {
+                    problems.add(line.getItemName() + ": only " + left + " of " + line.getQuantity() + " available");
+                }
+                if (fill > 0 && (partialFill || fill == line.getQuantity())) {
+                    placed.add(new OrderLine(line.getItemId(), line.getItemName(), fill));
+                    available.put(line.getItemId(), left - fill); // a later line for the same item sees the rest
+                }
+            }
+            if (!partialFill && !problems.isEmpty()) {
+                return new CartResult(new ArrayList<>(), problems); // nothing written yet
+            }
+            writeOrderLines(connection, ngoUsername, placed, orderDate);
+            return new CartResult(placed, problems);
+        });
+    }
+
+    /**
+     * Places a cart by product rather than by lot: each line names a product through any one of its
+     * lots, and its quantity is split over that product's lots soonest expiry first (see
+     * {@link LotBook}), lots expired before {@code today} excluded. Undated lots come last. The
+     * decrements of all lots and the order rows, one per lot used, are written in one transaction.
+     * {@code partialFill} works as in {@link #placeOrderLines}.
+     */
+    public static CartResult placeProductOrders(Connection connection, String ngoUsername, List<OrderLine> lines,
+                                                boolean partialFill, String orderDate, int today) throws SQLException {
+        return inTransaction(connection, c -> {
+            Map<Integer, Integer> taken = new HashMap<>();
+            List<OrderLine> placed = new ArrayList<>();
+            List<String> problems = new ArrayList<>();
+            for (OrderLine line : lines) {
+                if (line.getQuantity() <= 0) {
+                    problems.add(line.getItemName() + ": quantity must be positive");
+                    continue;
+                }
+                Integer productId = selectProductId(connection, line.getItemId());
+                if (productId == null) {
+                    problems.add(line.getItemName() + ": item no longer exists");
+                    continue;
+                }
+                List<OrderLine> lots = LotBook.allocate(connection, productId, line, today, taken);
+                int fill = lots.stream().mapToInt(OrderLine::getQuantity).sum();
+                if (fill < line.getQuantity()) {
+                    problems.add(line.getItemName() + ": only " + fill + " of " + line.getQuantity() + " available");
+                }
+                if (fill > 0 && (partialFill || fill == line.getQuantity())) {
+                    for (OrderLine lot : lots) {
+                        placed.add(lot);
+                        taken.merge(lot.getItemId(), lot.getQuantity(), Integer::sum); // later lines see the rest
+                    }
+                }
+            }
+            if (!partialFill && !problems.isEmpty()) {
+                return new CartResult(new ArrayList<>(), problems);
+            }
+            writeOrderLines(connection, ngoUsername, placed, orderDate);
+            return new CartResult(placed, problems);
+        });
+    }
+
+    /** Decrements stock and inserts an order for every line, with one guarded batch each. */
+    private static void writeOrderLines(Connection connection, String ngoUsername, List<OrderLine> placed, String orderDate) throws SQLException {
+        try (PreparedStatement stockPs = connection.prepareStatement(
+                "UPDATE " + DatabaseConfig.TABLE_FOOD_ITEMS + " SET " + DatabaseConfig.COL_QUANTITY + " = " + DatabaseConfig.COL_QUANTITY + " - ? WHERE " + DatabaseConfig.COL_ID + " = ? AND " + DatabaseConfig.COL_QUANTITY + " >= ?");
+             PreparedStatement orderPs = connection.prepareStatement(
+                "INSERT INTO orders(ngo_username, item_id, " + DatabaseConfig.COL_PRODUCT_ID + ", quantity, order_date) " +
+                "VALUES(?, ?, (SELECT " + DatabaseConfig.COL_PRODUCT_ID + " FROM " + DatabaseConfig.TABLE_FOOD_ITEMS +
+                " WHERE " + DatabaseConfig.COL_ID + " = ?), ?, ?)")) {
+            for (OrderLine line : placed) {
+                stockPs.setInt(1, line.getQuantity());
+                stockPs.setInt(2, line.getItemId());
+                stockPs.setInt(3, line.getQuantity());
+                stockPs.addBatch();
                 orderPs.setString(1, ngoUsername);
-                orderPs.setInt(2, itemId);
-                orderPs.setString(3, itemName);
-                orderPs.setInt(4, qty);
+                orderPs.setInt(2, line.getItemId());
+                orderPs.setInt(3, line.getItemId());
+                orderPs.setInt(4, line.getQuantity());
                 orderPs.setString(5, orderDate);
-                orderPs.executeUpdate();
+                orderPs.addBatch();
+            }
+            for (int count : stockPs.executeBatch()) {
+                // Only another process could have written since the check; start over
+                if (count == 0) throw new SQLException("Stock changed while placing the order");
+            }
+            orderPs.executeBatch();
+        }
+    }
+
+    private static Integer selectProductId(Connection connection, int itemId) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT " + DatabaseConfig.COL_PRODUCT_ID + " FROM " + DatabaseConfig.TABLE_FOOD_ITEMS + " WHERE " + DatabaseConfig.COL_ID + " = ?")) {
+            statement.setInt(1, itemId);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : null;
+            }
+        }
+    }
 
-                stockPs.setInt(1, qty);
-                stockPs.setInt(2, itemId);
-                stockPs.setInt(3, qty);
-                int updated = stockPs.executeUpdate();
-                if (updated == 0) {
-                    connection.rollback();
-                    throw new SQLException("Insufficient stock or item not found");
+    /** Current quantity of every item the lines refer to; missing items are absent from the map. */
+    static Map<Integer, Integer> selectQuantities(Connection connection, List<OrderLine> lines) throws SQLException {
+        Map<Integer, Integer> quantities = new HashMap<>();
+        int[] ids = lines.stream().mapToInt(OrderLine::getItemId).distinct().toArray();
+        for (int from = 0; from < ids.length; from += 500) {
+            int to = Math.min(ids.length, from + 500);
+            StringBuilder sql = new StringBuilder("SELECT ").append(DatabaseConfig.COL_ID).append(", ").append(DatabaseConfig.COL_QUANTITY)
+                    .append(" FROM ").append(DatabaseConfig.TABLE_FOOD_ITEMS).append(" WHERE ").append(DatabaseConfig.COL_ID).append(" IN (");
+            for (int i = from; i < to; i++) sql.append(i == from ? "?" : ", ?");
+            sql.append(")");
+            try (PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+                for (int i = from; i < to; i++) statement.setInt(i - from + 1, ids[i]);
+                try (ResultSet rs = statement.executeQuery()) {
+                    while (rs.next()) quantities.put(rs.getInt(1), rs.getInt(2));
                 }
-                connection.commit();
-            } catch (SQLException ex) {
-                connection.rollback();
-                throw ex;
-            } finally {
-                connection.setAutoCommit(true);
             }
         }
+        return quantities;
     }
 
-    public static ResultSet selectOrdersForNgo(Connection connection, String ngoUsername) throws SQLException {
-        PreparedStatement ps = connection.prepareStatement("SELECT id, ngo_username, item_id, item_name, quantity, order_date FROM orders WHERE ngo_username = ? AND completed = 0 ORDER BY id DESC");
-        ps.setString(1, ngoUsername);
-        return ps.executeQuery();
+    public static List<Order> selectOrdersForNgo(Connection connection, String ngoUsername) throws SQLException {
+        return query(connection, ORDER_SELECT + " WHERE ngo_username = ? AND completed = 0 ORDER BY id DESC", DBUtil::toOrder, ngoUsername);
     }
 
-    public static ResultSet selectAllOrders(Connection connection) throws SQLException {
-        PreparedStatement ps = connection.prepareStatement("SELECT id, ngo_username, item_id, item_name, quantity, order_date FROM orders WHERE completed = 0 ORDER BY id DESC");
-        return ps.executeQuery();
+    public static List<Order> selectAllOrders(Connection connection) throws SQLException {
+        return query(connection, ORDER_SELECT + " WHERE completed = 0 ORDER BY id DESC", DBUtil::toOrder);
     }
 
-    public static void markOrderCompleted(int orderId) throws SQLException {
-        try (Connection connection = getConnection();
-             PreparedStatement ps = connection.prepareStatement("UPDATE orders SET completed = 1 WHERE id = ?")) {
-            ps.setInt(1, orderId);
-            ps.executeUpdate();
+    /**
+     * Orders of one NGO (or of all when ngoUsername is null), pending, completed and archived alike,
+     * newest first: the {@code limit} orders with an id below {@code beforeId}.
+     */
+    public static List<Order> selectOrderHistory(Connection connection, String ngoUsername, int beforeId, int limit) throws SQLException {
+        String ngo = ngoUsername != null ? " AND ngo_username = ?" : "";
+        String sql =
+                "SELECT id, ngo_username, item_id, " + Catalog.PRODUCT_NAME + " AS item_name, quantity, order_date, completed " +
+                "FROM orders WHERE id < ?" + ngo +
+                " UNION ALL " +
+                "SELECT id, ngo_username, item_id, " + Catalog.PRODUCT_NAME + ", quantity, order_date, 1 " +
+                "FROM orders_archive WHERE id < ?" + ngo +
+                " ORDER BY id DESC LIMIT ?";
+        RowMapper<Order> mapper = rs -> new Order(rs.getInt("id"), rs.getString("ngo_username"), rs.getInt("item_id"),
+                rs.getString("item_name"), rs.getInt("quantity"), rs.getString("order_date"), rs.getInt("completed") != 0);
+        return ngoUsername != null
+                ? query(connection, sql, mapper, beforeId, ngoUsername, beforeId, ngoUsername, limit)
+                : query(connection, sql, mapper, beforeId, beforeId, limit);
+    }
+
+    /**
+     * Moves up to {@code limit} orders completed before {@code cutoffDate} (ISO) from orders to
+     * orders_archive; returns how many moved. Meant to be called repeatedly, one write per batch,
+     * until it returns less than {@code limit}.
+     */
+    public static int archiveCompletedOrders(Connection connection, String cutoffDate, int limit) throws SQLException {
+        List<Integer> ids = query(connection, "SELECT id FROM orders WHERE completed = 1 AND completed_date < ? LIMIT ?",
+                rs -> rs.getInt(1), cutoffDate, limit);
+        if (ids.isEmpty()) return 0;
+        try (PreparedStatement copy = connection.prepareStatement(
+                     "INSERT INTO orders_archive(" + ARCHIVED_ORDER_COLUMNS + ") SELECT " + ARCHIVED_ORDER_COLUMNS +
+                     " FROM orders WHERE id = ?");
+             PreparedStatement delete = connection.prepareStatement("DELETE FROM orders WHERE id = ?")) {
+            for (int id : ids) {
+                copy.setInt(1, id);
+                copy.addBatch();
+                delete.setInt(1, id);
+                delete.addBatch();
+            }
+            copy.executeBatch();
+            delete.executeBatch();
         }
+        return ids.size();
+    }
+
+    public static Order toOrder(ResultSet rs) throws SQLException {
+        return new Order(
+                rs.getInt("id"),
+                rs.getString("ngo_username"),
+                rs.getInt("item_id"),
+                rs.getString("item_name"),
+                rs.getInt("quantity"),
+                rs.getString("order_date"));
+    }
+
+    public static void markOrderCompleted(int orderId, String completedDate) throws SQLException {
+        awaitWrite(connection -> {
+            markOrderCompleted(connection, orderId, completedDate);
+            return null;
+        });
+    }
+
+    public static void markOrderCompleted(Connection connection, int orderId, String completedDate) throws SQLException {
+        markOrdersCompleted(connection, new int[] { orderId }, completedDate);
+    }
+
+    /**
+     * Marks the orders completed on {@code completedDate} (ISO) with one statement batch in one
+     * transaction; returns how many were still pending. Orders already completed, or archived, are
+     * left alone, so their completion date stays the first one.
+     */
+    public static int markOrdersCompleted(Connection connection, int[] orderIds, String completedDate) throws SQLException {
+        return updateEach(connection, "UPDATE orders SET completed = 1, completed_date = ? WHERE id = ? AND completed = 0",
+                orderIds, completedDate);
+    }
+
+    /**
+     * Runs {@code sql} once per id, as one batch in one transaction; returns the rows it changed.
+     * The id is the last parameter, after {@code params}.
+     */
+    private static int updateEach(Connection connection, String sql, int[] ids, Object... params) throws SQLException {
+        if (ids.length == 0) return 0;
+        return inTransaction(connection, c -> {
+            int changed = 0;
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                for (int id : ids) {
+                    for (int i = 0; i < params.length; i++) statement.setObject(i + 1, params[i]);
+                    statement.setInt(params.length + 1, id);
+                    statement.addBatch();
+                }
+                for (int count : statement.executeBatch()) changed += count;
+            }
+            return changed;
+        });
     }
 
 }
@@ -20,7 +20,52 @@ public class DatabaseConfig {
     public static final String TABLE_FOOD_ITEMS = "food_items";
     public static final String COL_ID = "id";
     public static final String COL_NAME = "name";
-    public static final String COL_CATEGORY = "category";
+    public static final String COL_CATEGORY = "category"; // category name as queries return it; stored as category_id
+    public static final String COL_CATEGORY_ID = "category_id";
+    public static final String COL_PRODUCT_ID = "product_id";
     public static final String COL_QUANTITY = "quantity";
     public static final String COL_EXPIRY_DATE = "expiry_date";
+    public static final String COL_EXPIRY_DAY = "expiry_day"; // expiry_date as an epoch day, indexed
+    public static final String COL_VERSION = "version";       // bumped by every edit of a lot, for compare-and-set updates
+
+    // Catalog: categories and product names, referenced by integer id from food_items and orders
+    public static final String TABLE_CATEGORIES = "categories";
+    public static final String TABLE_PRODUCTS = "products";
+
+    // Connection pool: one dedicated writer plus up to POOL_READERS read-only connections
+    public static final int POOL_READERS = 4;
+    public static final long POOL_ACQUIRE_TIMEOUT_MS = 10_000;
+    // Idle prepared statements kept per connection
+    public static final int STATEMENT_CACHE_SIZE = 64;
+
+    // Per-connection tuning, applied once when a pooled connection is opened
+    public static final String PRAGMA_SYNCHRONOUS = "NORMAL";   // safe with WAL, far fewer fsyncs than FULL
+    public static final int PRAGMA_CACHE_SIZE_KIB = 16_384;      // page cache per connection
+    public static final long PRAGMA_MMAP_SIZE = 256L * 1024 * 1024;
+
+    // SQLITE_BUSY handling: driver-level busy_timeout first, then a few retries with backoff
+    public static final int BUSY_TIMEOUT_MS = 5_000;
+    public static final int BUSY_RETRIES = 5;
+    public static final long BUSY_BACKOFF_MS = 50;
+
+    // Delete tombstones kept for delta refreshes, counted in change-sequence steps
+    public static final long TOMBSTONE_RETENTION = 100_000;
+
+    // Rows per transaction for bulk CSV imports
+    public static final int IMPORT_BATCH_SIZE = 10_000;
+
+    // Most queued write commands the writer thread commits in one transaction
+    public static final int WRITE_BATCH_MAX = 256;
+
+    // Stock ledger entries older than this are re-read before they admit or reject an order
+    public static final long LEDGER_MAX_AGE_MS = 2_000;
+
+    // How often the idle writer checks PRAGMA data_version for commits from other processes
+    public static final long EXTERNAL_CHANGE_POLL_MS = 500;
+
+    // Orders completed longer ago than this move to orders_archive, this many per write transaction,
+    // checked at start-up and then at this interval for as long as the application runs
+    public static final int ORDER_ARCHIVE_AFTER_DAYS = 30;
+    public static final int ORDER_ARCHIVE_BATCH_SIZE = 2_000;
+    public static final long ORDER_ARCHIVE_INTERVAL_MINUTES = 60;
 }
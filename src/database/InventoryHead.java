@@ -0,0 +1,20 @@
+package database;
+
+/**
+ * Size, highest id and change sequence of food_items at one point in time.
+ */
+public final class InventoryHead {
+    private final int count;
+    private final int maxId;
+    private final long seq;
+
+    InventoryHead(int count, int maxId, long seq) {
+        this.count = count;
+        this.maxId = maxId;
+        this.seq = seq;
+    }
+
+    public int getCount() { return count; }
+    public int getMaxId() { return maxId; }
+    public long getSeq() { return seq; }
+}
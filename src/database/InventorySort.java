@@ -0,0 +1,57 @@
+package database;
+
+import model.FoodItem;
+
+/**
+ * Server-side sort orders for paged inventory queries. Each order is keyed on
+ * (expression, id) so keyset pagination has a unique, stable position to resume from.
+ */
+public enum InventorySort {
+    ID(DatabaseConfig.COL_ID),
+    NAME("IFNULL(" + DatabaseConfig.COL_NAME + ", '')"),
+    // Walks the categories by their unique name index and each category's items by id, so a page
+    // needs no sort; every item has a category (see Catalog)
+    CATEGORY("c.name", DatabaseConfig.TABLE_CATEGORIES + " c CROSS JOIN " + DatabaseConfig.TABLE_FOOD_ITEMS +
+            " ON " + DatabaseConfig.TABLE_FOOD_ITEMS + "." + DatabaseConfig.COL_CATEGORY_ID + " = c.id"),
+    QUANTITY("IFNULL(" + DatabaseConfig.COL_QUANTITY + ", 0)"),
+    EXPIRY("IFNULL(" + DatabaseConfig.COL_EXPIRY_DAY + ", " + FoodItem.NO_EXPIRY + ")");
+
+    static final String ITEMS = DatabaseConfig.TABLE_FOOD_ITEMS;
+    static final String ITEM_ID = ITEMS + "." + DatabaseConfig.COL_ID;
+
+    final String expression;
+    final String source; // FROM clause the expression is evaluated over
+
+    InventorySort(String expression) {
+        this(expression, DatabaseConfig.TABLE_FOOD_ITEMS);
+    }
+
+    InventorySort(String expression, String source) {
+        this.expression = expression;
+        this.source = source;
+    }
+
+    /** Value of the sort expression for {@code item}, matching what SQLite compares on. */
+    public Object keyOf(FoodItem item) {
+        switch (this) {
+            case ID: return item.getId();
+            case NAME: return item.getName() == null ? "" : item.getName();
+            case CATEGORY: return item.getCategory() == null ? "" : item.getCategory();
+            case QUANTITY: return item.getQuantity();
+            case EXPIRY: return item.getExpiryDay();
+            default: throw new IllegalStateException();
+        }
+    }
+
+    /** Maps a FoodItem property name (as used by PropertyValueFactory) to its sort order. */
+    public static InventorySort forProperty(String property) {
+        switch (property) {
+            case "id": return ID;
+            case "name": return NAME;
+            case "category": return CATEGORY;
+            case "quantity": return QUANTITY;
+            case "expiryDate": return EXPIRY;
+            default: return null;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import model.OrderLine;
+
+/**
+ * First-expiry-first-out lot order per product, kept in memory for order allocation
+ * (see DBUtil#placeProductOrders). For each product it holds the lots that were in stock and not
+ * expired when it was loaded, as parallel arrays sorted by expiry day (undated lots last) and id,
+ * so an allocation starts with a binary search past the lots that expired since and then visits
+ * only the lots it takes from. A product is loaded on first use with one seek of
+ * idx_food_items_fefo, however many lots other products have.
+ *
+ * The order is only a hint. Allocation reads each lot's quantity, product and expiry inside the
+ * order's transaction and the decrement is guarded, so a stale or rolled-back view can never take
+ * more than a lot holds; it only skips lots that were emptied, deleted or moved. What a stale view
+ * would miss is stock added since, so writes that add stock or change a lot's product or expiry
+ * forget the products they touched, and so does a rolled-back write batch.
+ *
+ * Lots run out front first, so each product also keeps a head: lots before it were found empty
+ * before the allocation that passed them took anything, and only a restock (which forgets the
+ * product) fills a lot again. Lots an allocation drains itself are left to the next one, which
+ * finds them empty, since the draining write may still roll back. Empty lots further in, left by
+ * orders placed by lot, are stepped over; too many of them trigger a reload.
+ */
+final class LotBook {
+    /** Sort key of lots without an expiry day: after every dated lot. */
+    static final String EXPIRY_KEY = "IFNULL(" + DatabaseConfig.COL_EXPIRY_DAY + ", " + Integer.MAX_VALUE + ")";
+
+    // Emptied lots an allocation may step over before the product is reloaded without them
+    private static final int MAX_EMPTY_LOTS = 64;
+    // Lots read per round trip: the first usually fills the line, later ones grow
+    private static final int FIRST_CHUNK = 4;
+    private static final int MAX_CHUNK = 256;
+
+    private static final Map<Integer, Lots> PRODUCTS = new HashMap<>();
+
+    private LotBook() {}
+
+    /**
+     * Splits {@code line} (a quantity of the product {@code productId}) over that product's lots,
+     * soonest expiry first, skipping lots that expire before {@code today}. {@code taken} holds
+     * quantities already allocated in the same transaction, by lot id. Returns one line per lot
+     * used; together they may come to less than asked when stock runs out.
+     */
+    static List<OrderLine> allocate(Connection connection, int productId, OrderLine line, int today,
+                                    Map<Integer, Integer> taken) throws SQLException {
+        Lots lots = lots(connection, productId, today);
+        List<OrderLine> allocated = new ArrayList<>();
+        int wanted = line.getQuantity();
+        int head = Math.max(lots.head, lots.firstFrom(today));
+        boolean atHead = taken.isEmpty(); // lots drained earlier in this transaction are not known empty yet
+        int empty = 0;
+        int chunk = FIRST_CHUNK;
+        for (int from = head; from < lots.size && wanted > 0; from += chunk, chunk = Math.min(chunk * 2, MAX_CHUNK)) {
+            int to = Math.min(lots.size, from + chunk);
+            Map<Integer, Integer> quantities = selectLotQuantities(connection, productId, Arrays.copyOfRange(lots.ids, from, to), today);
+            for (int i = from; i < to && wanted > 0; i++) {
+                Integer quantity = quantities.get(lots.ids[i]);
+                int left = quantity == null ? 0 : quantity - taken.getOrDefault(lots.ids[i], 0);
+                if (left <= 0) {
+                    if (atHead) head = i + 1;
+                    else empty++;
+                    continue;
+                }
+                atHead = false;
+                int take = Math.min(left, wanted);
+                allocated.add(new OrderLine(lots.ids[i], line.getItemName(), take));
+                wanted -= take;
+            }
+        }
+        if (empty > MAX_EMPTY_LOTS) {
+            forget(productId);
+        } else {
+            advance(lots, head);
+        }
+        return allocated;
+    }
+
+    /** Drops the lot order of one product, e.g. after a lot of it was added or restocked. */
+    static synchronized void forget(int productId) {
+        PRODUCTS.remove(productId);
+    }
+
+    /** Drops every product's lot order, e.g. after another process wrote to the database. */
+    static synchronized void forgetAll() {
+        PRODUCTS.clear();
+    }
+
+    private static synchronized void advance(Lots lots, int head) {
+        lots.head = Math.max(lots.head, head);
+    }
+
+    private static synchronized Lots lots(Connection connection, int productId, int today) throws SQLException {
+        Lots lots = PRODUCTS.get(productId);
+        if (lots == null) {
+            lots = load(connection, productId, today);
+            PRODUCTS.put(productId, lots);
+        }
+        return lots;
+    }
+
+    private static Lots load(Connection connection, int productId, int today) throws SQLException {
+        Lots lots = new Lots();
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT " + DatabaseConfig.COL_ID + ", " + EXPIRY_KEY + " FROM " + DatabaseConfig.TABLE_FOOD_ITEMS +
+                " WHERE " + DatabaseConfig.COL_PRODUCT_ID + " = ? AND " + EXPIRY_KEY + " >= ? AND " +
+                DatabaseConfig.COL_QUANTITY + " > 0 ORDER BY " + EXPIRY_KEY + ", " + DatabaseConfig.COL_ID)) {
+            statement.setInt(1, productId);
+            statement.setInt(2, today);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) lots.add(rs.getInt(1), rs.getInt(2));
+            }
+        }
+        return lots;
+    }
+
+    /** Quantities of those of {@code ids} that still belong to the product and have not expired. */
+    private static Map<Integer, Integer> selectLotQuantities(Connection connection, int productId, int[] ids, int today) throws SQLException {
+        StringBuilder sql = new StringBuilder("SELECT ").append(DatabaseConfig.COL_ID).append(", ").append(DatabaseConfig.COL_QUANTITY)
+                .append(" FROM ").append(DatabaseConfig.TABLE_FOOD_ITEMS).append(" WHERE ").append(DatabaseConfig.COL_ID).append(" IN (");
+        for (int i = 0; i < ids.length; i++) sql.append(i == 0 ? "?" : ", ?");
+        sql.append(") AND ").append(DatabaseConfig.COL_PRODUCT_ID).append(" = ? AND ").append(EXPIRY_KEY).append(" >= ?");
+        Map<Integer, Integer> quantities = new HashMap<>();
+        try (PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+            for (int i = 0; i < ids.length; i++) statement.setInt(i + 1, ids[i]);
+            statement.setInt(ids.length + 1, productId);
+            statement.setInt(ids.length + 2, today);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) quantities.put(rs.getInt(1), rs.getInt(2));
+            }
+        }
+        return quantities;
+    }
+
+    /** One product's lots as parallel arrays in (expiry key, id) order, fixed once loaded, and its head. */
+    private static final class Lots {
+        private int[] expiryKeys = new int[8];
+        private int[] ids = new int[8];
+        private int size;
+        private volatile int head;
+
+        void add(int id, int expiryKey) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                expiryKeys = Arrays.copyOf(expiryKeys, size * 2);
+            }
+            ids[size] = id;
+            expiryKeys[size] = expiryKey;
+            size++;
+        }
+
+        /** Position of the first lot expiring on or after {@code day}. */
+        int firstFrom(int day) {
+            int lo = 0, hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (expiryKeys[mid] < day) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo;
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package database;
+
+import java.sql.SQLException;
+
+/**
+ * Receives the rows of {@link DBUtil#stream} one at a time.
+ */
+@FunctionalInterface
+public interface RowHandler<T> {
+    void handle(T row) throws SQLException;
+}
@@ -0,0 +1,500 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * Ordered schema migrations. The database records the last applied version in
+ * {@code PRAGMA user_version}; on start-up every newer migration runs once, each in its own
+ * transaction together with the version bump, so a failed migration leaves the previous version.
+ *
+ * Migrations are append-only: never edit or reorder one that has shipped, add a new one instead.
+ * Versions 1-4 reproduce the schema that used to be created ad hoc on every start, and are written
+ * to be safe on databases from that time, which report version 0 but already have some of it.
+ */
+final class SchemaMigrations {
+    private static final List<Migration> MIGRATIONS = List.of(
+        new Migration(1, "base tables", SchemaMigrations::createBaseTables),
+        new Migration(2, "expiry day", SchemaMigrations::createExpiryDay),
+        new Migration(3, "change tracking", SchemaMigrations::createChangeTracking),
+        new Migration(4, "full-text index", SchemaMigrations::createFullTextIndex),
+        new Migration(5, "order and listing indexes", SchemaMigrations::createListingIndexes),
+        new Migration(6, "categories and products", SchemaMigrations::createCatalog),
+        new Migration(7, "order archive", SchemaMigrations::createOrderArchive),
+        new Migration(8, "stock and demand aggregates", SchemaMigrations::createAggregates),
+        new Migration(9, "lot expiry order", SchemaMigrations::createLotOrderIndex),
+        new Migration(10, "row versions", SchemaMigrations::createRowVersions),
+        new Migration(11, "order completion dates", SchemaMigrations::createCompletionDates)
+    );
+
+    private SchemaMigrations() {}
+
+    static int latestVersion() {
+        return MIGRATIONS.get(MIGRATIONS.size() - 1).version;
+    }
+
+    /** Brings the schema up to {@link #latestVersion()}; returns the number of migrations applied. */
+    static int migrate(Connection connection) throws SQLException {
+        int current = userVersion(connection);
+        if (current > latestVersion()) {
+            throw new SQLException("Database schema version " + current +
+                    " is newer than this application supports (" + latestVersion() + ")");
+        }
+        int applied = 0;
+        for (Migration migration : MIGRATIONS) {
+            if (migration.version <= current) continue;
+            try {
+                DBUtil.inTransaction(connection, c -> {
+                    try (Statement statement = c.createStatement()) {
+                        migration.step.apply(statement);
+                        statement.executeUpdate("PRAGMA user_version = " + migration.version);
+                    }
+                    return null;
+                });
+            } catch (SQLException e) {
+                throw new SQLException("Schema migration " + migration.version + " (" + migration.description +
+                        ") failed: " + e.getMessage(), e);
+            }
+            applied++;
+        }
+        return applied;
+    }
+
+    static int userVersion(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("PRAGMA user_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    private static void createBaseTables(Statement statement) throws SQLException {
+        statement.executeUpdate(
+                "CREATE TABLE IF NOT EXISTS " + DatabaseConfig.TABLE_FOOD_ITEMS + " (" +
+                        DatabaseConfig.COL_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                        DatabaseConfig.COL_NAME + " TEXT NOT NULL, " +
+                        DatabaseConfig.COL_CATEGORY + " TEXT, " +
+                        DatabaseConfig.COL_QUANTITY + " INTEGER DEFAULT 0, " +
+                        DatabaseConfig.COL_EXPIRY_DATE + " TEXT" +
+                        ")"
+        );
+
+        // Users table: username (PK), role (NGO or SUPPLIER)
+        statement.executeUpdate(
+            "CREATE TABLE IF NOT EXISTS users (" +
+            "username TEXT PRIMARY KEY, " +
+            "role TEXT NOT NULL CHECK(role IN ('NGO','SUPPLIER'))" +
+            ")"
+        );
+
+        // Orders table
+        statement.executeUpdate(
+            "CREATE TABLE IF NOT EXISTS orders (" +
+            "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+            "ngo_username TEXT NOT NULL, " +
+            "item_id INTEGER NOT NULL, " +
+            "item_name TEXT NOT NULL, " +
+            "quantity INTEGER NOT NULL, " +
+            "order_date TEXT NOT NULL, " +
+            "completed INTEGER NOT NULL DEFAULT 0, " +
+            "FOREIGN KEY (ngo_username) REFERENCES users(username) ON DELETE CASCADE" +
+            ")"
+        );
+        // Orders tables from before order completion existed
+        addColumnIfMissing(statement, "orders", "completed", "INTEGER NOT NULL DEFAULT 0");
+    }
+
+    /**
+     * expiry_day holds expiry_date as an epoch day (NULL when missing or malformed), so expiry and
+     * stock alerts are index range scans instead of parsing every row. Writers set both columns;
+     * rows that predate the column are converted here.
+     */
+    private static void createExpiryDay(Statement statement) throws SQLException {
+        addColumnIfMissing(statement, DatabaseConfig.TABLE_FOOD_ITEMS, DatabaseConfig.COL_EXPIRY_DAY, "INTEGER");
+        statement.executeUpdate("CREATE INDEX IF NOT EXISTS idx_food_items_expiry_day ON " +
+                DatabaseConfig.TABLE_FOOD_ITEMS + "(" + DatabaseConfig.COL_EXPIRY_DAY + ")");
+        statement.executeUpdate("CREATE INDEX IF NOT EXISTS idx_food_items_quantity ON " +
+                DatabaseConfig.TABLE_FOOD_ITEMS + "(" + DatabaseConfig.COL_QUANTITY + ")");
+        // Lot lookup for import upserts
+        statement.executeUpdate("CREATE INDEX IF NOT EXISTS idx_food_items_lot ON " + DatabaseConfig.TABLE_FOOD_ITEMS + "(" +
+                DatabaseConfig.COL_NAME + ", " + DatabaseConfig.COL_CATEGORY + ", " + DatabaseConfig.COL_EXPIRY_DATE + ")");
+        // julianday() of a bare date is the day's noon minus half a day, so this is exact for yyyy-MM-dd;
+        // the length check keeps it to the same strings LocalDate.parse accepts
+        statement.executeUpdate("UPDATE " + DatabaseConfig.TABLE_FOOD_ITEMS + " SET " + DatabaseConfig.COL_EXPIRY_DAY +
+                " = CAST(julianday(trim(" + DatabaseConfig.COL_EXPIRY_DATE + ")) - 2440587.5 AS INTEGER)" +
+                " WHERE " + DatabaseConfig.COL_EXPIRY_DAY + " IS NULL" +
+                " AND length(trim(" + DatabaseConfig.COL_EXPIRY_DATE + ")) = 10" +
+                " AND julianday(trim(" + DatabaseConfig.COL_EXPIRY_DATE + ")) IS NOT NULL");
+    }
+
+    /**
+     * Change tracking for delta refreshes: every insert/update stamps the row with the next value of a
+     * global counter, and every delete leaves a tombstone. Triggers keep this true for all write paths.
+     */
+    private static void createChangeTracking(Statement statement) throws SQLException {
+        statement.executeUpdate(
+            "CREATE TABLE IF NOT EXISTS change_counter (" +
+            "id INTEGER PRIMARY KEY CHECK (id = 1), " +
+            "seq INTEGER NOT NULL, " +
+            "tombstone_floor INTEGER NOT NULL DEFAULT 0" +   // tombstones at or below this seq were pruned
+            ")"
+        );
+        statement.executeUpdate("INSERT OR IGNORE INTO change_counter(id, seq) VALUES (1, 0)");
+        statement.executeUpdate(
+            "CREATE TABLE IF NOT EXISTS deleted_rows (" +
+            "table_name TEXT NOT NULL, " +
+            "row_id INTEGER NOT NULL, " +
+            "change_seq INTEGER NOT NULL" +
+            ")"
+        );
+        statement.executeUpdate("CREATE INDEX IF NOT EXISTS idx_deleted_rows_seq ON deleted_rows(change_seq)");
+
+        String[][] tracked = {
+            { DatabaseConfig.TABLE_FOOD_ITEMS, DatabaseConfig.COL_NAME + ", " + DatabaseConfig.COL_CATEGORY + ", " +
+                    DatabaseConfig.COL_QUANTITY + ", " + DatabaseConfig.COL_EXPIRY_DATE },
+            { "orders", "quantity, completed" }
+        };
+        for (String[] t : tracked) {
+            addColumnIfMissing(statement, t[0], "change_seq", "INTEGER NOT NULL DEFAULT 0");
+            createChangeTracking(statement, t[0], t[1]);
+        }
+    }
+
+    /** Change-sequence index and triggers of one table; {@code trackedColumns} are the ones whose updates count. */
+    private static void createChangeTracking(Statement statement, String table, String trackedColumns) throws SQLException {
+        statement.executeUpdate("CREATE INDEX IF NOT EXISTS idx_" + table + "_change_seq ON " + table + "(change_seq)");
+        String stamp =
+            "UPDATE change_counter SET seq = seq + 1 WHERE id = 1; " +
+            "UPDATE " + table + " SET change_seq = (SELECT seq FROM change_counter WHERE id = 1) WHERE id = NEW.id; ";
+        statement.executeUpdate("CREATE TRIGGER IF NOT EXISTS trg_" + table + "_insert_seq AFTER INSERT ON " + table +
+            " BEGIN " + stamp + "END");
+        statement.executeUpdate("CREATE TRIGGER IF NOT EXISTS trg_" + table + "_update_seq AFTER UPDATE OF " + trackedColumns +
+            " ON " + table + " BEGIN " + stamp + "END");
+        createDeleteTracking(statement, table, "");
+    }
+
+    /** Trigger that leaves a tombstone for each deleted row of {@code table} matching {@code when} (e.g. "WHEN ..."). */
+    private static void createDeleteTracking(Statement statement, String table, String when) throws SQLException {
+        statement.executeUpdate("CREATE TRIGGER IF NOT EXISTS trg_" + table + "_delete_seq AFTER DELETE ON " + table +
+            " " + when + " BEGIN " +
+            "UPDATE change_counter SET seq = seq + 1 WHERE id = 1; " +
+            "INSERT INTO deleted_rows(table_name, row_id, change_seq) " +
+            "VALUES ('" + table + "', OLD.id, (SELECT seq FROM change_counter WHERE id = 1)); " +
+            "END");
+    }
+
+    /** FTS5 index over name and category, kept in sync with food_items by triggers. */
+    private static void createFullTextIndex(Statement statement) throws SQLException {
+        boolean exists;
+        try (ResultSet rs = statement.executeQuery(
+                "SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = '" + DBUtil.TABLE_FOOD_ITEMS_FTS + "'")) {
+            exists = rs.next();
+        }
+        String table = DatabaseConfig.TABLE_FOOD_ITEMS;
+        String fts = DBUtil.TABLE_FOOD_ITEMS_FTS;
+        String name = DatabaseConfig.COL_NAME;
+        String category = DatabaseConfig.COL_CATEGORY;
+        statement.executeUpdate(
+            "CREATE VIRTUAL TABLE IF NOT EXISTS " + fts + " USING fts5(" +
+            name + ", " + category + ", " +
+            "content='" + table + "', content_rowid='" + DatabaseConfig.COL_ID + "', " +
+            "tokenize='unicode61 remove_diacritics 2', prefix='2 3')"
+        );
+        String insertNew = "INSERT INTO " + fts + "(rowid, " + name + ", " + category + ") " +
+                "VALUES (NEW." + DatabaseConfig.COL_ID + ", NEW." + name + ", NEW." + category + "); ";
+        String deleteOld = "INSERT INTO " + fts + "(" + fts + ", rowid, " + name + ", " + category + ") " +
+                "VALUES ('delete', OLD." + DatabaseConfig.COL_ID + ", OLD." + name + ", OLD." + category + "); ";
+        statement.executeUpdate("CREATE TRIGGER IF NOT EXISTS trg_" + table + "_insert_fts AFTER INSERT ON " + table +
+            " BEGIN " + insertNew + "END");
+        statement.executeUpdate("CREATE TRIGGER IF NOT EXISTS trg_" + table + "_delete_fts AFTER DELETE ON " + table +
+            " BEGIN " + deleteOld + "END");
+        statement.executeUpdate("CREATE TRIGGER IF NOT EXISTS trg_" + table + "_update_fts AFTER UPDATE OF " + name + ", " + category +
+            " ON " + table + " BEGIN " + deleteOld + insertNew + "END");
+        if (!exists) {
+            // Index the rows that are already there
+            statement.executeUpdate("INSERT INTO " + fts + "(" + fts + ") VALUES ('rebuild')");
+        }
+    }
+
+    /**
+     * Pending-order lists filter on completed = 0 and read newest first; partial indexes hold only
+     * pending orders and cover every column the lists read, so they never touch completed orders or
+     * the table itself. Name-ordered inventory pages get an index on the exact sort expression.
+     */
+    private static void createListingIndexes(Statement statement) throws SQLException {
+        String pendingColumns = "id, item_id, item_name, quantity, order_date";
+        statement.executeUpdate("CREATE INDEX IF NOT EXISTS idx_orders_pending_ngo ON orders(ngo_username, " +
+                pendingColumns + ") WHERE completed = 0");
+        statement.executeUpdate("CREATE INDEX IF NOT EXISTS idx_orders_pending ON orders(" +
+                pendingColumns + ", ngo_username) WHERE completed = 0");
+        statement.executeUpdate("CREATE INDEX IF NOT EXISTS idx_food_items_name_sort ON " + DatabaseConfig.TABLE_FOOD_ITEMS +
+                "(" + InventorySort.NAME.expression + ", " + DatabaseConfig.COL_ID + ")");
+        // Order picker: in-stock items by name
+        statement.executeUpdate("CREATE INDEX IF NOT EXISTS idx_food_items_in_stock_name ON " + DatabaseConfig.TABLE_FOOD_ITEMS +
+                "(" + DatabaseConfig.COL_NAME + ", " + DatabaseConfig.COL_ID + ") WHERE " + DatabaseConfig.COL_QUANTITY + " > 0");
+    }
+
+    /**
+     * Category names and product names move out of food_items and orders into their own tables,
+     * referenced by integer id. food_items keeps its name next to the ids, since name-ordered
+     * paging and the order picker seek indexes on it; orders keep only the product id. Items
+     * without a category get the category named "" (blank and missing were shown alike). SQLite
+     * cannot drop a column that indexes or triggers use, so both tables are rebuilt with their rows,
+     * ids and AUTOINCREMENT counters, and their indexes, triggers and the full-text index recreated.
+     */
+    private static void createCatalog(Statement statement) throws SQLException {
+        String items = DatabaseConfig.TABLE_FOOD_ITEMS;
+        String categories = DatabaseConfig.TABLE_CATEGORIES;
+        String products = DatabaseConfig.TABLE_PRODUCTS;
+        String categoryId = DatabaseConfig.COL_CATEGORY_ID;
+        String productId = DatabaseConfig.COL_PRODUCT_ID;
+        statement.executeUpdate("CREATE TABLE IF NOT EXISTS " + categories + " (id INTEGER PRIMARY KEY, name TEXT NOT NULL UNIQUE)");
+        statement.executeUpdate("CREATE TABLE IF NOT EXISTS " + products + " (id INTEGER PRIMARY KEY, name TEXT NOT NULL, " +
+                categoryId + " INTEGER NOT NULL REFERENCES " + categories + "(id), UNIQUE (name, " + categoryId + "))");
+        if (!hasColumn(statement, items, DatabaseConfig.COL_CATEGORY)) return;
+
+        statement.executeUpdate("INSERT OR IGNORE INTO " + categories + "(name) VALUES ('')");
+        statement.executeUpdate("INSERT OR IGNORE INTO " + categories + "(name) SELECT DISTINCT " + DatabaseConfig.COL_CATEGORY +
+                " FROM " + items + " WHERE " + DatabaseConfig.COL_CATEGORY + " IS NOT NULL");
+        String itemCategory = "(SELECT id FROM " + categories + " WHERE name = IFNULL(f." + DatabaseConfig.COL_CATEGORY + ", ''))";
+        statement.executeUpdate("INSERT OR IGNORE INTO " + products + "(name, " + categoryId + ") SELECT DISTINCT f." +
+                DatabaseConfig.COL_NAME + ", " + itemCategory + " FROM " + items + " f");
+        // Orders whose item was deleted or renamed since keep their own name, without a category
+        statement.executeUpdate("INSERT OR IGNORE INTO " + products + "(name, " + categoryId + ") SELECT DISTINCT item_name, " +
+                "(SELECT id FROM " + categories + " WHERE name = '') FROM orders WHERE item_name NOT IN (SELECT name FROM " + products + ")");
+        String itemProduct = "(SELECT id FROM " + products + " p WHERE p.name = f." + DatabaseConfig.COL_NAME +
+                " AND p." + categoryId + " = " + itemCategory + ")";
+
+        long itemsSequence = sequence(statement, items);
+        statement.executeUpdate("DROP TABLE IF EXISTS " + DBUtil.TABLE_FOOD_ITEMS_FTS);
+        statement.executeUpdate(
+            "CREATE TABLE food_items_rebuilt (" +
+            DatabaseConfig.COL_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+            DatabaseConfig.COL_NAME + " TEXT NOT NULL, " +
+            categoryId + " INTEGER NOT NULL REFERENCES " + categories + "(id), " +
+            productId + " INTEGER NOT NULL REFERENCES " + products + "(id), " +
+            DatabaseConfig.COL_QUANTITY + " INTEGER DEFAULT 0, " +
+            DatabaseConfig.COL_EXPIRY_DATE + " TEXT, " +
+            DatabaseConfig.COL_EXPIRY_DAY + " INTEGER, " +
+            "change_seq INTEGER NOT NULL DEFAULT 0" +
+            ")");
+        statement.executeUpdate("INSERT INTO food_items_rebuilt SELECT f." + DatabaseConfig.COL_ID + ", f." + DatabaseConfig.COL_NAME +
+                ", " + itemCategory + ", " + itemProduct + ", f." + DatabaseConfig.COL_QUANTITY + ", f." + DatabaseConfig.COL_EXPIRY_DATE +
+                ", f." + DatabaseConfig.COL_EXPIRY_DAY + ", f.change_seq FROM " + items + " f");
+        statement.executeUpdate("DROP TABLE " + items);
+        statement.executeUpdate("ALTER TABLE food_items_rebuilt RENAME TO " + items);
+        restoreSequence(statement, items, itemsSequence);
+
+        statement.executeUpdate("CREATE INDEX idx_food_items_expiry_day ON " + items + "(" + DatabaseConfig.COL_EXPIRY_DAY + ")");
+        statement.executeUpdate("CREATE INDEX idx_food_items_quantity ON " + items + "(" + DatabaseConfig.COL_QUANTITY + ")");
+        statement.executeUpdate("CREATE INDEX idx_food_items_lot ON " + items + "(" + DatabaseConfig.COL_NAME + ", " + categoryId +
+                ", " + DatabaseConfig.COL_EXPIRY_DATE + ")");
+        statement.executeUpdate("CREATE INDEX idx_food_items_category ON " + items + "(" + categoryId + ")");
+        statement.executeUpdate("CREATE INDEX idx_food_items_name_sort ON " + items +
+                "(" + InventorySort.NAME.expression + ", " + DatabaseConfig.COL_ID + ")");
+        statement.executeUpdate("CREATE INDEX idx_food_items_in_stock_name ON " + items +
+                "(" + DatabaseConfig.COL_NAME + ", " + DatabaseConfig.COL_ID + ") WHERE " + DatabaseConfig.COL_QUANTITY + " > 0");
+        createChangeTracking(statement, items, DatabaseConfig.COL_NAME + ", " + categoryId + ", " +
+                DatabaseConfig.COL_QUANTITY + ", " + DatabaseConfig.COL_EXPIRY_DATE);
+
+        // Full-text index over the item name and its category's name, read through a view for rebuilds
+        String fts = DBUtil.TABLE_FOOD_ITEMS_FTS;
+        String name = DatabaseConfig.COL_NAME;
+        String category = DatabaseConfig.COL_CATEGORY;
+        statement.executeUpdate("CREATE VIEW " + fts + "_source AS SELECT f." + DatabaseConfig.COL_ID + ", f." + name + ", c.name AS " +
+                category + " FROM " + items + " f JOIN " + categories + " c ON c.id = f." + categoryId);
+        statement.executeUpdate(
+            "CREATE VIRTUAL TABLE " + fts + " USING fts5(" + name + ", " + category + ", " +
+            "content='" + fts + "_source', content_rowid='" + DatabaseConfig.COL_ID + "', " +
+            "tokenize='unicode61 remove_diacritics 2', prefix='2 3')");
+        String categoryOf = "(SELECT name FROM " + categories + " WHERE id = %s." + categoryId + ")";
+        String insertNew = "INSERT INTO " + fts + "(rowid, " + name + ", " + category + ") " +
+                "VALUES (NEW." + DatabaseConfig.COL_ID + ", NEW." + name + ", " + String.format(categoryOf, "NEW") + "); ";
+        String deleteOld = "INSERT INTO " + fts + "(" + fts + ", rowid, " + name + ", " + category + ") " +
+                "VALUES ('delete', OLD." + DatabaseConfig.COL_ID + ", OLD." + name + ", " + String.format(categoryOf, "OLD") + "); ";
+        statement.executeUpdate("CREATE TRIGGER trg_" + items + "_insert_fts AFTER INSERT ON " + items + " BEGIN " + insertNew + "END");
+        statement.executeUpdate("CREATE TRIGGER trg_" + items + "_delete_fts AFTER DELETE ON " + items + " BEGIN " + deleteOld + "END");
+        statement.executeUpdate("CREATE TRIGGER trg_" + items + "_update_fts AFTER UPDATE OF " + name + ", " + categoryId +
+                " ON " + items + " BEGIN " + deleteOld + insertNew + "END");
+        statement.executeUpdate("INSERT INTO " + fts + "(" + fts + ") VALUES ('rebuild')");
+
+        long ordersSequence = sequence(statement, "orders");
+        statement.executeUpdate(
+            "CREATE TABLE orders_rebuilt (" +
+            "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+            "ngo_username TEXT NOT NULL, " +
+            "item_id INTEGER NOT NULL, " +
+            productId + " INTEGER NOT NULL REFERENCES " + products + "(id), " +
+            "quantity INTEGER NOT NULL, " +
+            "order_date TEXT NOT NULL, " +
+            "completed INTEGER NOT NULL DEFAULT 0, " +
+            "change_seq INTEGER NOT NULL DEFAULT 0, " +
+            "FOREIGN KEY (ngo_username) REFERENCES users(username) ON DELETE CASCADE" +
+            ")");
+        // The product of the ordered item if it still carries the ordered name, else any product of that name
+        statement.executeUpdate("INSERT INTO orders_rebuilt SELECT o.id, o.ngo_username, o.item_id, COALESCE(" +
+                "(SELECT f." + productId + " FROM " + items + " f WHERE f." + DatabaseConfig.COL_ID + " = o.item_id AND f." +
+                DatabaseConfig.COL_NAME + " = o.item_name), " +
+                "(SELECT MIN(id) FROM " + products + " WHERE name = o.item_name)), " +
+                "o.quantity, o.order_date, o.completed, o.change_seq FROM orders o");
+        statement.executeUpdate("DROP TABLE orders");
+        statement.executeUpdate("ALTER TABLE orders_rebuilt RENAME TO orders");
+        restoreSequence(statement, "orders", ordersSequence);
+        String pendingColumns = "id, item_id, " + productId + ", quantity, order_date";
+        statement.executeUpdate("CREATE INDEX idx_orders_pending_ngo ON orders(ngo_username, " + pendingColumns + ") WHERE completed = 0");
+        statement.executeUpdate("CREATE INDEX idx_orders_pending ON orders(" + pendingColumns + ", ngo_username) WHERE completed = 0");
+        createChangeTracking(statement, "orders", "quantity, completed");
+    }
+
+    /**
+     * Completed orders older than {@link DatabaseConfig#ORDER_ARCHIVE_AFTER_DAYS} move to orders_archive
+     * in the background (see DBUtil#archiveCompletedOrders), so orders only holds pending and recent
+     * ones; history queries read both. Ids stay unique across the two, since orders never reuses one.
+     * Moving a completed order out leaves no tombstone: it left every pending list when it was completed.
+     */
+    private static void createOrderArchive(Statement statement) throws SQLException {
+        statement.executeUpdate(
+            "CREATE TABLE IF NOT EXISTS orders_archive (" +
+            "id INTEGER PRIMARY KEY, " +
+            "ngo_username TEXT NOT NULL, " +
+            "item_id INTEGER NOT NULL, " +
+            DatabaseConfig.COL_PRODUCT_ID + " INTEGER NOT NULL REFERENCES " + DatabaseConfig.TABLE_PRODUCTS + "(id), " +
+            "quantity INTEGER NOT NULL, " +
+            "order_date TEXT NOT NULL, " +
+            "FOREIGN KEY (ngo_username) REFERENCES users(username) ON DELETE CASCADE" +
+            ")");
+        statement.executeUpdate("CREATE INDEX IF NOT EXISTS idx_orders_archive_ngo ON orders_archive(ngo_username, id)");
+        // The archiver's work list: completed orders still in the working table, oldest first
+        statement.executeUpdate("CREATE INDEX IF NOT EXISTS idx_orders_completed ON orders(order_date) WHERE completed = 1");
+        statement.executeUpdate("DROP TRIGGER IF EXISTS trg_orders_delete_seq");
+        createDeleteTracking(statement, "orders", "WHEN OLD.completed = 0");
+    }
+
+    /** Summary tables described in {@link Aggregates}, their triggers, and their initial contents. */
+    private static void createAggregates(Statement statement) throws SQLException {
+        String items = DatabaseConfig.TABLE_FOOD_ITEMS;
+        String categoryId = DatabaseConfig.COL_CATEGORY_ID;
+        String quantity = DatabaseConfig.COL_QUANTITY;
+        String expiryDay = DatabaseConfig.COL_EXPIRY_DAY;
+        statement.executeUpdate("CREATE TABLE " + Aggregates.CATEGORY_STOCK + " (" + categoryId +
+                " INTEGER PRIMARY KEY, items INTEGER NOT NULL, quantity INTEGER NOT NULL)");
+        statement.executeUpdate("CREATE TABLE " + Aggregates.EXPIRY_WEEK_STOCK +
+                " (week INTEGER PRIMARY KEY, items INTEGER NOT NULL, quantity INTEGER NOT NULL)");
+        statement.executeUpdate("CREATE TABLE " + Aggregates.NGO_DEMAND +
+                " (ngo_username TEXT PRIMARY KEY, items INTEGER NOT NULL, quantity INTEGER NOT NULL) WITHOUT ROWID");
+
+        String addNew = adjustTotal(Aggregates.CATEGORY_STOCK, categoryId, "NEW." + categoryId, 1, "NEW." + quantity, "1") +
+                adjustTotal(Aggregates.EXPIRY_WEEK_STOCK, "week", Aggregates.expiryWeek("NEW." + expiryDay), 1, "NEW." + quantity,
+                        "NEW." + expiryDay + " IS NOT NULL");
+        String removeOld = adjustTotal(Aggregates.CATEGORY_STOCK, categoryId, "OLD." + categoryId, -1, "OLD." + quantity, "1") +
+                adjustTotal(Aggregates.EXPIRY_WEEK_STOCK, "week", Aggregates.expiryWeek("OLD." + expiryDay), -1, "OLD." + quantity,
+                        "OLD." + expiryDay + " IS NOT NULL");
+        statement.executeUpdate("CREATE TRIGGER trg_" + items + "_insert_totals AFTER INSERT ON " + items + " BEGIN " + addNew + "END");
+        statement.executeUpdate("CREATE TRIGGER trg_" + items + "_delete_totals AFTER DELETE ON " + items + " BEGIN " + removeOld + "END");
+        statement.executeUpdate("CREATE TRIGGER trg_" + items + "_update_totals AFTER UPDATE OF " + categoryId + ", " + quantity + ", " +
+                expiryDay + " ON " + items + " BEGIN " + removeOld + addNew + "END");
+
+        // Demand counts every order placed; only a pending order that goes away (not an archived one) takes it back
+        String addOrder = adjustTotal(Aggregates.NGO_DEMAND, "ngo_username", "NEW.ngo_username", 1, "NEW.quantity", "1");
+        String removeOrder = adjustTotal(Aggregates.NGO_DEMAND, "ngo_username", "OLD.ngo_username", -1, "OLD.quantity", "1");
+        statement.executeUpdate("CREATE TRIGGER trg_orders_insert_totals AFTER INSERT ON orders BEGIN " + addOrder + "END");
+        statement.executeUpdate("CREATE TRIGGER trg_orders_delete_totals AFTER DELETE ON orders WHEN OLD.completed = 0 BEGIN " +
+                removeOrder + "END");
+        statement.executeUpdate("CREATE TRIGGER trg_orders_update_totals AFTER UPDATE OF ngo_username, quantity ON orders BEGIN " +
+                removeOrder + addOrder + "END");
+
+        Aggregates.rebuild(statement);
+    }
+
+    /**
+     * A product's lots in stock, soonest expiry first and undated last, for {@link LotBook}. Partial,
+     * so lots that ran out drop out of it and loading a product reads only lots it can allocate.
+     */
+    private static void createLotOrderIndex(Statement statement) throws SQLException {
+        statement.executeUpdate("CREATE INDEX IF NOT EXISTS idx_food_items_fefo ON " + DatabaseConfig.TABLE_FOOD_ITEMS + "(" +
+                DatabaseConfig.COL_PRODUCT_ID + ", " + LotBook.EXPIRY_KEY + ", " + DatabaseConfig.COL_ID + ") WHERE " +
+                DatabaseConfig.COL_QUANTITY + " > 0");
+    }
+
+    /**
+     * Edit counter of each lot, checked and bumped by DBUtil#updateFoodItem so an edit made from a
+     * stale copy is refused instead of overwriting the newer one. Orders only move the quantity, by
+     * delta, and leave it alone.
+     */
+    private static void createRowVersions(Statement statement) throws SQLException {
+        addColumnIfMissing(statement, DatabaseConfig.TABLE_FOOD_ITEMS, DatabaseConfig.COL_VERSION, "INTEGER NOT NULL DEFAULT 0");
+    }
+
+    /**
+     * The day each order was completed, which the archiver ages orders by instead of the day they
+     * were placed. Orders completed before this was recorded count as completed on the day of the
+     * upgrade, so none of them is archived sooner than the threshold allows.
+     */
+    private static void createCompletionDates(Statement statement) throws SQLException {
+        addColumnIfMissing(statement, "orders", "completed_date", "TEXT");
+        addColumnIfMissing(statement, "orders_archive", "completed_date", "TEXT");
+        statement.executeUpdate("UPDATE orders SET completed_date = date('now', 'localtime') WHERE completed = 1 AND completed_date IS NULL");
+        statement.executeUpdate("DROP INDEX IF EXISTS idx_orders_completed");
+        statement.executeUpdate("CREATE INDEX IF NOT EXISTS idx_orders_completed_date ON orders(completed_date) WHERE completed = 1");
+    }
+
+    /**
+     * Trigger statements that add {@code sign} (1 or -1) rows of {@code quantity} to the summary row
+     * {@code key} of {@code table}, when {@code condition} holds; a row left with no items is removed.
+     */
+    private static String adjustTotal(String table, String keyColumn, String key, int sign, String quantity, String condition) {
+        String add = "INSERT INTO " + table + "(" + keyColumn + ", items, quantity) SELECT " + key + ", " + sign + ", " +
+                sign + " * IFNULL(" + quantity + ", 0) WHERE " + condition +
+                " ON CONFLICT(" + keyColumn + ") DO UPDATE SET items = items + excluded.items, quantity = quantity + excluded.quantity; ";
+        return sign > 0 ? add : add + "DELETE FROM " + table + " WHERE " + keyColumn + " = " + key + " AND items = 0; ";
+    }
+
+    private static boolean hasColumn(Statement statement, String table, String column) throws SQLException {
+        try (ResultSet rs = statement.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                if (column.equalsIgnoreCase(rs.getString("name"))) return true;
+            }
+        }
+        return false;
+    }
+
+    /** AUTOINCREMENT high-water mark of {@code table}, or -1 if it never had a row. */
+    private static long sequence(Statement statement, String table) throws SQLException {
+        try (ResultSet rs = statement.executeQuery("SELECT seq FROM sqlite_sequence WHERE name = '" + table + "'")) {
+            return rs.next() ? rs.getLong(1) : -1;
+        }
+    }
+
+    /** Keeps a rebuilt table from reusing ids of rows deleted before the rebuild. */
+    private static void restoreSequence(Statement statement, String table, long seq) throws SQLException {
+        if (seq < 0) return;
+        if (statement.executeUpdate("UPDATE sqlite_sequence SET seq = MAX(seq, " + seq + ") WHERE name = '" + table + "'") == 0) {
+            statement.executeUpdate("INSERT INTO sqlite_sequence(name, seq) VALUES ('" + table + "', " + seq + ")");
+        }
+    }
+
+    private static void addColumnIfMissing(Statement statement, String table, String column, String definition) throws SQLException {
+        if (!hasColumn(statement, table, column)) {
+            statement.executeUpdate("ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Step {
+        void apply(Statement statement) throws SQLException;
+    }
+
+    private static final class Migration {
+        final int version;
+        final String description;
+        final Step step;
+
+        Migration(int version, String description, Step step) {
+            this.version = version;
+            this.description = description;
+            this.step = step;
+        }
+    }
+}
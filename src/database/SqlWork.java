@@ -0,0 +1,12 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * A unit of JDBC work run against a connection handed out by {@link DBUtil}.
+ */
+@FunctionalInterface
+public interface SqlWork<T> {
+    T run(Connection connection) throws SQLException;
+}
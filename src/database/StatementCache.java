@@ -0,0 +1,129 @@
+package database;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Prepared statements of one physical connection, kept for reuse by SQL text. Handing out a
+ * statement removes it from the cache, so two open statements never share one; closing it
+ * closes its result set, clears its parameters and puts it back. At most
+ * {@link DatabaseConfig#STATEMENT_CACHE_SIZE} idle statements are kept, least recently used
+ * first out.
+ */
+final class StatementCache {
+    private final Connection physical;
+    private final Map<String, PreparedStatement> idle = new LinkedHashMap<>(16, 0.75f, true);
+
+    StatementCache(Connection physical) {
+        this.physical = physical;
+    }
+
+    /** A statement for {@code sql} whose close() returns it here; {@code owner} is what getConnection() reports. */
+    PreparedStatement prepare(String sql, Connection owner) throws SQLException {
+        PreparedStatement statement;
+        synchronized (this) {
+            statement = idle.remove(sql);
+        }
+        if (statement == null || statement.isClosed()) {
+            statement = physical.prepareStatement(sql);
+        }
+        return (PreparedStatement) Proxy.newProxyInstance(
+                StatementCache.class.getClassLoader(),
+                new Class<?>[] { PreparedStatement.class },
+                new CachedHandler(sql, statement, owner));
+    }
+
+    synchronized void close() {
+        idle.values().forEach(StatementCache::closeQuietly);
+        idle.clear();
+    }
+
+    private void giveBack(String sql, PreparedStatement statement) {
+        try {
+            statement.clearParameters();
+            statement.clearBatch();
+            statement.setFetchSize(0);
+        } catch (SQLException e) {
+            closeQuietly(statement);
+            return;
+        }
+        List<PreparedStatement> evicted = new ArrayList<>();
+        synchronized (this) {
+            if (idle.putIfAbsent(sql, statement) != null) {
+                evicted.add(statement); // a copy prepared while this one was out is already back
+            }
+            Iterator<PreparedStatement> eldest = idle.values().iterator();
+            while (idle.size() > DatabaseConfig.STATEMENT_CACHE_SIZE) {
+                evicted.add(eldest.next());
+                eldest.remove();
+            }
+        }
+        evicted.forEach(StatementCache::closeQuietly);
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException ignore) { /* already broken */ }
+    }
+
+    private final class CachedHandler implements InvocationHandler {
+        private final String sql;
+        private final PreparedStatement statement;
+        private final Connection owner;
+        private ResultSet open;
+        private boolean closed;
+
+        CachedHandler(String sql, PreparedStatement statement, Connection owner) {
+            this.sql = sql;
+            this.statement = statement;
+            this.owner = owner;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        if (open != null) open.close();
+                        giveBack(sql, statement);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || statement.isClosed();
+                case "getConnection":
+                    return owner;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Cached[" + sql + "]";
+                default:
+                    break;
+            }
+            if (closed) {
+                throw new SQLException("Statement has been closed");
+            }
+            try {
+                Object result = method.invoke(statement, args);
+                if (result instanceof ResultSet) open = (ResultSet) result;
+                return result;
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package database;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Counts of in-stock items that are expired or expiring soon, and of low-stock items,
+ * as shown in the dashboard headers.
+ */
+public final class StockAlerts {
+    private final int expired;
+    private final int expiringSoon;
+    private final int lowStock;
+
+    StockAlerts(int expired, int expiringSoon, int lowStock) {
+        this.expired = expired;
+        this.expiringSoon = expiringSoon;
+        this.lowStock = lowStock;
+    }
+
+    public int getExpired() { return expired; }
+    public int getExpiringSoon() { return expiringSoon; }
+    public int getLowStock() { return lowStock; }
+
+    public boolean isEmpty() {
+        return expired == 0 && expiringSoon == 0 && lowStock == 0;
+    }
+
+    /** Short header text, e.g. "2 expired, 5 expiring soon"; empty when there is nothing to report. */
+    public String summary() {
+        List<String> parts = new ArrayList<>();
+        if (expired > 0) parts.add(expired + " expired");
+        if (expiringSoon > 0) parts.add(expiringSoon + " expiring soon");
+        if (lowStock > 0) parts.add(lowStock + " low stock");
+        return String.join(", ", parts);
+    }
+}
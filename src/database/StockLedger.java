@@ -0,0 +1,192 @@
+package database;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import model.OrderLine;
+
+/**
+ * Available-to-promise ledger in front of order placement. For every item it keeps the last known
+ * stock and the quantity reserved by orders still on their way to the database, so an order for
+ * more than is left is turned down in memory instead of after a write round trip. Items are
+ * locked in stripes, so orders for different items never wait on each other.
+ *
+ * The database stays the authority: an admitted order still goes through the guarded decrement,
+ * and a reservation is settled or released once that write finishes. Nothing here is persisted.
+ * Stock is only decremented by the committed order, so after a crash or restart the ledger simply
+ * starts empty and reloads from {@code food_items.quantity}.
+ */
+final class StockLedger {
+    private static final int STRIPES = 64;
+    private static final int UNKNOWN = -1;
+
+    private static final Object[] LOCKS = new Object[STRIPES];
+    private static final Map<Integer, Entry> ENTRIES = new ConcurrentHashMap<>();
+
+    static {
+        for (int i = 0; i < STRIPES; i++) LOCKS[i] = new Object();
+    }
+
+    private StockLedger() {}
+
+    /**
+     * Reserves stock for {@code lines}. With {@code partialFill} each line is cut to what is left;
+     * otherwise nothing is reserved unless every line fits. Reads stock from the database for
+     * items not seen recently, so it must not run on the JavaFX thread.
+     */
+    static Reservation reserve(List<OrderLine> lines, boolean partialFill) throws SQLException {
+        refresh(lines);
+        List<OrderLine> admitted = new ArrayList<>();
+        List<String> problems = new ArrayList<>();
+        for (OrderLine line : lines) {
+            if (line.getQuantity() <= 0) {
+                problems.add(line.getItemName() + ": quantity must be positive");
+                continue;
+            }
+            Entry entry = ENTRIES.get(line.getItemId());
+            int fill;
+            synchronized (lock(line.getItemId())) {
+                if (entry.missing) {
+                    problems.add(line.getItemName() + ": item no longer exists");
+                    continue;
+                }
+                // Lost a race with a settle while loading: let the database decide
+                int left = entry.onHand == UNKNOWN ? line.getQuantity() : Math.max(0, entry.onHand - entry.reserved);
+                fill = Math.min(left, line.getQuantity());
+                if (fill < line.getQuantity()) {
+                    problems.add(line.getItemName() + ": only " + left + " of " + line.getQuantity() + " available");
+                }
+                if (fill == 0 || (!partialFill && fill < line.getQuantity())) continue;
+                entry.reserved += fill;
+            }
+            admitted.add(new OrderLine(line.getItemId(), line.getItemName(), fill));
+        }
+        Reservation reservation = new Reservation(admitted, problems);
+        if (!partialFill && !problems.isEmpty()) {
+            release(reservation);
+            return new Reservation(new ArrayList<>(), problems);
+        }
+        return reservation;
+    }
+
+    /** The reserved lines were written; {@code placed} is what the database actually took. */
+    static void settle(Reservation reservation, List<OrderLine> placed) {
+        for (OrderLine line : reservation.lines) {
+            unreserve(line);
+        }
+        for (OrderLine line : placed) {
+            Entry entry = ENTRIES.get(line.getItemId());
+            synchronized (lock(line.getItemId())) {
+                if (entry.onHand != UNKNOWN) entry.onHand = Math.max(0, entry.onHand - line.getQuantity());
+                entry.generation++; // a load that read before this commit must not overwrite it
+            }
+        }
+        // The database taking less than was reserved means the ledger was behind
+        for (OrderLine line : reservation.lines) {
+            if (quantityOf(placed, line.getItemId()) < quantityOf(reservation.lines, line.getItemId())) {
+                invalidate(line.getItemId());
+            }
+        }
+    }
+
+    /** The reserved lines were not written. */
+    static void release(Reservation reservation) {
+        for (OrderLine line : reservation.lines) {
+            unreserve(line);
+        }
+    }
+
+    /** Forgets the known stock of one item after it was edited or deleted. */
+    static void invalidate(int itemId) {
+        Entry entry = ENTRIES.get(itemId);
+        if (entry == null) return;
+        synchronized (lock(itemId)) {
+            entry.onHand = UNKNOWN;
+            entry.missing = false;
+            entry.generation++;
+        }
+    }
+
+    /** Forgets all known stock, e.g. after a bulk import. */
+    static void invalidateAll() {
+        ENTRIES.keySet().forEach(StockLedger::invalidate);
+    }
+
+    private static void unreserve(OrderLine line) {
+        Entry entry = ENTRIES.get(line.getItemId());
+        if (entry == null) return;
+        synchronized (lock(line.getItemId())) {
+            entry.reserved -= line.getQuantity();
+        }
+    }
+
+    private static int quantityOf(List<OrderLine> lines, int itemId) {
+        int quantity = 0;
+        for (OrderLine line : lines) {
+            if (line.getItemId() == itemId) quantity += line.getQuantity();
+        }
+        return quantity;
+    }
+
+    /** Loads the stock of items that are unknown or stale, all in one query. */
+    private static void refresh(List<OrderLine> lines) throws SQLException {
+        long now = System.currentTimeMillis();
+        List<OrderLine> stale = new ArrayList<>();
+        Map<Integer, Integer> generations = new HashMap<>();
+        for (OrderLine line : lines) {
+            int itemId = line.getItemId();
+            if (generations.containsKey(itemId)) continue;
+            Entry entry = ENTRIES.computeIfAbsent(itemId, id -> new Entry());
+            synchronized (lock(itemId)) {
+                if (entry.onHand != UNKNOWN && now - entry.loadedAt < DatabaseConfig.LEDGER_MAX_AGE_MS) continue;
+                generations.put(itemId, entry.generation);
+            }
+            stale.add(line);
+        }
+        if (stale.isEmpty()) return;
+        Map<Integer, Integer> quantities = DBUtil.withReader(c -> DBUtil.selectQuantities(c, stale));
+        for (Map.Entry<Integer, Integer> loaded : generations.entrySet()) {
+            int itemId = loaded.getKey();
+            Integer quantity = quantities.get(itemId);
+            Entry entry = ENTRIES.get(itemId);
+            synchronized (lock(itemId)) {
+                if (entry.generation != loaded.getValue()) continue;
+                entry.missing = quantity == null;
+                entry.onHand = quantity == null ? 0 : quantity;
+                entry.loadedAt = now;
+            }
+        }
+    }
+
+    private static Object lock(int itemId) {
+        return LOCKS[Math.floorMod(itemId, STRIPES)];
+    }
+
+    /** Stock known for one item; guarded by the item's stripe lock. */
+    private static final class Entry {
+        int onHand = UNKNOWN;
+        boolean missing;
+        long loadedAt;
+        int reserved;
+        int generation;
+    }
+
+    /** Lines admitted by the ledger (with the quantity reserved) and why others were not. */
+    static final class Reservation {
+        private final List<OrderLine> lines;
+        private final List<String> problems;
+
+        private Reservation(List<OrderLine> lines, List<String> problems) {
+            this.lines = Collections.unmodifiableList(lines);
+            this.problems = Collections.unmodifiableList(problems);
+        }
+
+        List<OrderLine> getLines() { return lines; }
+        List<String> getProblems() { return problems; }
+    }
+}
@@ -0,0 +1,48 @@
+package database;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Inventory and demand totals for the supplier dashboard, read from the trigger-maintained summary
+ * tables (see {@link Aggregates}) rather than from the items and orders themselves.
+ */
+public final class StockSummary {
+    private final List<Total> categories;
+    private final List<Total> expiryWeeks;
+    private final Total expired;
+    private final List<Total> topNgos;
+
+    StockSummary(List<Total> categories, List<Total> expiryWeeks, Total expired, List<Total> topNgos) {
+        this.categories = Collections.unmodifiableList(categories);
+        this.expiryWeeks = Collections.unmodifiableList(expiryWeeks);
+        this.expired = expired;
+        this.topNgos = Collections.unmodifiableList(topNgos);
+    }
+
+    /** Lots and quantity per category, by category name. */
+    public List<Total> getCategories() { return categories; }
+    /** Lots and quantity expiring in each of the coming weeks, labelled with the week's first day. */
+    public List<Total> getExpiryWeeks() { return expiryWeeks; }
+    /** Lots and quantity from weeks before the current one. */
+    public Total getExpired() { return expired; }
+    /** NGOs with the largest quantity ordered, orders counted as items. */
+    public List<Total> getTopNgos() { return topNgos; }
+
+    /** One summary row: what it is for, how many lots (or orders), and their total quantity. */
+    public static final class Total {
+        private final String label;
+        private final int items;
+        private final long quantity;
+
+        Total(String label, int items, long quantity) {
+            this.label = label;
+            this.items = items;
+            this.quantity = quantity;
+        }
+
+        public String getLabel() { return label; }
+        public int getItems() { return items; }
+        public long getQuantity() { return quantity; }
+    }
+}
@@ -0,0 +1,26 @@
+package database;
+
+import model.FoodItem;
+
+/**
+ * Outcome of a compare-and-set item update: applied, or refused because the item was edited,
+ * ran short of stock or went away since the caller read it. A refused update carries the item
+ * as it is now, or null when it was deleted.
+ */
+public final class UpdateResult {
+    private static final UpdateResult APPLIED = new UpdateResult(true, null);
+
+    private final boolean applied;
+    private final FoodItem current;
+
+    private UpdateResult(boolean applied, FoodItem current) {
+        this.applied = applied;
+        this.current = current;
+    }
+
+    static UpdateResult applied() { return APPLIED; }
+    static UpdateResult conflict(FoodItem current) { return new UpdateResult(false, current); }
+
+    public boolean isApplied() { return applied; }
+    public FoodItem getCurrent() { return current; }
+}
@@ -0,0 +1,188 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-writer group commit. Mutations are queued as commands and run by one dedicated thread,
+ * which takes everything pending (up to {@link DatabaseConfig#WRITE_BATCH_MAX} commands) and runs
+ * it in one transaction, each command inside its own savepoint. A failing command only rolls back
+ * its savepoint and fails its own future; the rest of the group still commits. Futures complete
+ * after the commit, so a caller never sees a result that could still be rolled back.
+ *
+ * Under load many commands share one commit instead of each paying for its own transaction and
+ * competing for the write lock.
+ *
+ * Between batches the thread also polls {@code PRAGMA data_version} on the writer connection. Its
+ * value only moves when a different connection commits, so a change means another process wrote
+ * to the database; that is published on {@link ChangeBus}.
+ */
+final class WriteQueue {
+    private final BlockingQueue<Command<?>> pending = new LinkedBlockingQueue<>();
+    private final Thread thread;
+    private volatile boolean closed;
+    private long dataVersion = -1; // -1 until first read
+    private boolean dataVersionLost; // the writer connection failed; a reopened one starts a new counter
+    private long nextPoll;
+
+    WriteQueue() {
+        thread = new Thread(this::loop, "db-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    <T> CompletableFuture<T> submit(SqlWork<T> work) {
+        Command<T> command = new Command<>(work);
+        if (closed) {
+            command.future.completeExceptionally(new SQLException("Database writer has been shut down"));
+            return command.future;
+        }
+        pending.add(command);
+        return command.future;
+    }
+
+    boolean isWriterThread() {
+        return Thread.currentThread() == thread;
+    }
+
+    /** Stops taking commands; those already queued still run. */
+    void close() {
+        closed = true;
+        thread.interrupt();
+        try {
+            thread.join(DatabaseConfig.POOL_ACQUIRE_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Command<?> left;
+        while ((left = pending.poll()) != null) {
+            left.future.completeExceptionally(new SQLException("Database writer has been shut down"));
+        }
+    }
+
+    private void loop() {
+        List<Command<?>> batch = new ArrayList<>();
+        nextPoll = System.nanoTime();
+        while (true) {
+            Command<?> first;
+            try {
+                if (pending.isEmpty() && closed) return;
+                first = pending.poll(DatabaseConfig.EXTERNAL_CHANGE_POLL_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                if (closed && pending.isEmpty()) return;
+                continue;
+            }
+            if (first != null) {
+                batch.add(first);
+                pending.drainTo(batch, DatabaseConfig.WRITE_BATCH_MAX - 1);
+                runBatch(batch);
+                batch.clear();
+            }
+            // Also between batches, so a steady stream of local writes does not hide external ones
+            if (System.nanoTime() - nextPoll >= 0 && !closed) {
+                pollDataVersion();
+                nextPoll = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(DatabaseConfig.EXTERNAL_CHANGE_POLL_MS);
+            }
+        }
+    }
+
+    private void pollDataVersion() {
+        long version;
+        try (Connection connection = DBUtil.getConnection()) {
+            version = DBUtil.dataVersion(connection);
+        } catch (SQLException e) {
+            dataVersionLost = true;
+            return;
+        }
+        // After a lost connection we cannot tell what happened in between, so assume a change
+        boolean changed = dataVersionLost || (dataVersion != -1 && version != dataVersion);
+        dataVersion = version;
+        dataVersionLost = false;
+        if (!changed) return;
+        StockLedger.invalidateAll();
+        LotBook.forgetAll();
+        Catalog.forgetAll();
+        ChangeBus.publishExternal();
+    }
+
+    private void runBatch(List<Command<?>> batch) {
+        long backoff = DatabaseConfig.BUSY_BACKOFF_MS;
+        for (int attempt = 0; ; attempt++) {
+            try {
+                commit(batch);
+                for (Command<?> command : batch) command.complete();
+                return;
+            } catch (SQLException e) {
+                if (!DBUtil.isBusy(e) || attempt >= DatabaseConfig.BUSY_RETRIES) {
+                    for (Command<?> command : batch) command.future.completeExceptionally(e);
+                    return;
+                }
+            }
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException ie) {
+                // close() interrupts; finish this batch anyway
+            }
+            backoff *= 2;
+        }
+    }
+
+    /** Runs the whole batch in one transaction; a busy error anywhere rolls it all back for a retry. */
+    private void commit(List<Command<?>> batch) throws SQLException {
+        try (Connection connection = DBUtil.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                for (Command<?> command : batch) {
+                    command.run(connection);
+                    if (command.error instanceof SQLException && DBUtil.isBusy((SQLException) command.error)) {
+                        throw (SQLException) command.error;
+                    }
+                }
+                connection.commit();
+                Catalog.committed();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                Catalog.rolledBack();
+                LotBook.forgetAll();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    private static final class Command<T> {
+        private final SqlWork<T> work;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private T result;
+        private Throwable error;
+
+        Command(SqlWork<T> work) {
+            this.work = work;
+        }
+
+        void run(Connection connection) {
+            result = null;
+            error = null;
+            try {
+                result = DBUtil.inTransaction(connection, work);
+            } catch (SQLException | RuntimeException e) {
+                error = e;
+            }
+        }
+
+        void complete() {
+            if (error != null) {
+                future.completeExceptionally(error);
+            } else {
+                future.complete(result);
+            }
+        }
+    }
+}
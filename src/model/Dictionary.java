@@ -0,0 +1,37 @@
+package model;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps a small set of repeating strings (categories, NGO names) to dense int codes, so rows store
+ * a code instead of their own copy of the text. Code 0 stands for null. Codes are never reused;
+ * the dictionary only grows, which is fine for the low-cardinality columns it is meant for.
+ * Thread-safe: rows are built on database worker threads.
+ */
+final class Dictionary {
+    private final ConcurrentHashMap<String, Integer> codes = new ConcurrentHashMap<>();
+    private volatile String[] values = new String[16];
+    private int size = 1; // code 0 = null
+
+    int encode(String value) {
+        if (value == null) return 0;
+        Integer code = codes.get(value);
+        return code != null ? code : add(value);
+    }
+
+    String decode(int code) {
+        return values[code];
+    }
+
+    private synchronized int add(String value) {
+        Integer code = codes.get(value);
+        if (code != null) return code;
+        String[] current = values;
+        if (size == current.length) current = Arrays.copyOf(current, size * 2);
+        current[size] = value;
+        values = current; // publish the slot before the code that points at it
+        codes.put(value, size);
+        return size++;
+    }
+}
@@ -1,43 +1,169 @@
 package model;
 
-import javafx.beans.property.IntegerProperty;
+import javafx.beans.property.ReadOnlyIntegerProperty;
+import javafx.beans.property.ReadOnlyStringProperty;
 import javafx.beans.property.SimpleIntegerProperty;
 import javafx.beans.property.SimpleStringProperty;
-import javafx.beans.property.StringProperty;
 
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+
+/**
+ * One inventory lot. Kept compact because views and caches hold many of them: plain fields, the
+ * category as a dictionary code and the expiry date as an epoch day (its text is only kept when it
+ * is not the ISO form of that day). The observable properties table cells bind to are created on
+ * first use, for the few rows actually on screen; setters keep them in step once they exist.
+ */
 public class FoodItem {
-    private final IntegerProperty id;
-    private final StringProperty name;
-    private final StringProperty category;
-    private final IntegerProperty quantity;
-    private final StringProperty expiryDate;
+    /** Expiry day value for items without a (valid) expiry date. */
+    public static final int NO_EXPIRY = Integer.MIN_VALUE;
+    // Alert thresholds shared by the dashboards, the export and the alert queries
+    public static final int EXPIRING_SOON_DAYS = 7;
+    public static final int LOW_STOCK_THRESHOLD = 10;
+
+    private static final Dictionary CATEGORIES = new Dictionary();
+
+    private final int id;
+    private String name;
+    private int category;       // CATEGORIES code
+    private int quantity;
+    private int expiryDay;      // epoch day of the expiry date, or NO_EXPIRY
+    private String expiryText;  // the expiry date as given, unless it is the ISO form of expiryDay
+    private int version;        // edit counter of the row, for compare-and-set updates
+    private Properties properties;
+    // Status cache, valid for statusDay only; rows and exports ask for it far more often than it changes
+    private StockStatus status;
+    private int statusDay;
 
     public FoodItem(int id, String name, String category, int quantity, String expiryDate) {
-        this.id = new SimpleIntegerProperty(id);
-        this.name = new SimpleStringProperty(name);
-        this.category = new SimpleStringProperty(category);
-        this.quantity = new SimpleIntegerProperty(quantity);
-        this.expiryDate = new SimpleStringProperty(expiryDate);
+        this(id, name, category, quantity, expiryDate, parseExpiryDay(expiryDate));
     }
 
-    public IntegerProperty idProperty() { return id; }
-    public int getId() { return id.get(); }
+    /** Used when the epoch day is already known (e.g. read from the expiry_day column). */
+    public FoodItem(int id, String name, String category, int quantity, String expiryDate, int expiryDay) {
+        this(id, name, category, quantity, expiryDate, expiryDay, 0);
+    }
 
-    public StringProperty nameProperty() { return name; }
-    public String getName() { return name.get(); }
-    public void setName(String value) { name.set(value); }
+    public FoodItem(int id, String name, String category, int quantity, String expiryDate, int expiryDay, int version) {
+        this.id = id;
+        this.name = name;
+        this.category = CATEGORIES.encode(category);
+        this.quantity = quantity;
+        setExpiry(expiryDate, expiryDay);
+        this.version = version;
+    }
 
-    public StringProperty categoryProperty() { return category; }
-    public String getCategory() { return category.get(); }
-    public void setCategory(String value) { category.set(value); }
+    public ReadOnlyIntegerProperty idProperty() { return properties().id(this); }
+    public int getId() { return id; }
 
-    public IntegerProperty quantityProperty() { return quantity; }
-    public int getQuantity() { return quantity.get(); }
-    public void setQuantity(int value) { quantity.set(value); }
+    public ReadOnlyStringProperty nameProperty() { return properties().name(this); }
+    public String getName() { return name; }
+    public void setName(String value) {
+        name = value;
+        if (properties != null && properties.name != null) properties.name.set(value);
+    }
 
-    public StringProperty expiryDateProperty() { return expiryDate; }
-    public String getExpiryDate() { return expiryDate.get(); }
-    public void setExpiryDate(String value) { expiryDate.set(value); }
-}
+    public ReadOnlyStringProperty categoryProperty() { return properties().category(this); }
+    public String getCategory() { return CATEGORIES.decode(category); }
+    public void setCategory(String value) {
+        category = CATEGORIES.encode(value);
+        if (properties != null && properties.category != null) properties.category.set(value);
+    }
+
+    public ReadOnlyIntegerProperty quantityProperty() { return properties().quantity(this); }
+    public int getQuantity() { return quantity; }
+    public void setQuantity(int value) {
+        quantity = value;
+        status = null;
+        if (properties != null && properties.quantity != null) properties.quantity.set(value);
+    }
+
+    public ReadOnlyStringProperty expiryDateProperty() { return properties().expiryDate(this); }
+    public String getExpiryDate() {
+        return expiryText != null || expiryDay == NO_EXPIRY ? expiryText : LocalDate.ofEpochDay(expiryDay).toString();
+    }
+    public void setExpiryDate(String value) {
+        setExpiry(value, parseExpiryDay(value));
+        status = null;
+        if (properties != null && properties.expiryDate != null) properties.expiryDate.set(value);
+    }
+
+    public int getExpiryDay() { return expiryDay; }
+
+    /** Edit counter as of when the row was read; an update must name it to be applied. */
+    public int getVersion() { return version; }
+    public void setVersion(int value) { version = value; }
+    public boolean hasExpiry() { return expiryDay != NO_EXPIRY; }
 
+    public boolean isLowStock() { return getQuantity() < LOW_STOCK_THRESHOLD; }
 
+    /** Status on {@code today} (an epoch day); computed once per item and day. */
+    public StockStatus getStatus(long today) {
+        StockStatus cached = status;
+        if (cached == null || statusDay != today) {
+            cached = StockStatus.of(expiryDay, getQuantity(), today);
+            statusDay = (int) today;
+            status = cached;
+        }
+        return cached;
+    }
+
+    private void setExpiry(String text, int day) {
+        expiryDay = day;
+        // Only a date that reads back exactly from its epoch day can drop its text
+        expiryText = day != NO_EXPIRY && text != null && text.length() == 10
+                && text.equals(LocalDate.ofEpochDay(day).toString()) ? null : text;
+    }
+
+    private Properties properties() {
+        if (properties == null) properties = new Properties();
+        return properties;
+    }
+
+    /** Epoch day of an ISO yyyy-MM-dd date, or NO_EXPIRY when blank or malformed. */
+    public static int parseExpiryDay(String date) {
+        if (date == null || date.trim().isEmpty()) return NO_EXPIRY;
+        try {
+            return (int) LocalDate.parse(date.trim()).toEpochDay();
+        } catch (DateTimeParseException e) {
+            return NO_EXPIRY;
+        }
+    }
+
+    /**
+     * Observable views of the fields, each created the first time something binds to it. Handed out
+     * read-only: the fields stay authoritative and only the setters write through.
+     */
+    private static final class Properties {
+        private SimpleIntegerProperty id;
+        private SimpleStringProperty name;
+        private SimpleStringProperty category;
+        private SimpleIntegerProperty quantity;
+        private SimpleStringProperty expiryDate;
+
+        ReadOnlyIntegerProperty id(FoodItem item) {
+            if (id == null) id = new SimpleIntegerProperty(item, "id", item.id);
+            return id;
+        }
+
+        ReadOnlyStringProperty name(FoodItem item) {
+            if (name == null) name = new SimpleStringProperty(item, "name", item.name);
+            return name;
+        }
+
+        ReadOnlyStringProperty category(FoodItem item) {
+            if (category == null) category = new SimpleStringProperty(item, "category", item.getCategory());
+            return category;
+        }
+
+        ReadOnlyIntegerProperty quantity(FoodItem item) {
+            if (quantity == null) quantity = new SimpleIntegerProperty(item, "quantity", item.quantity);
+            return quantity;
+        }
+
+        ReadOnlyStringProperty expiryDate(FoodItem item) {
+            if (expiryDate == null) expiryDate = new SimpleStringProperty(item, "expiryDate", item.getExpiryDate());
+            return expiryDate;
+        }
+    }
+}
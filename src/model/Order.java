@@ -1,26 +1,50 @@
 package model;
 
+import java.time.LocalDate;
+
+/**
+ * One order line as the dashboards list it. Stored like {@link FoodItem}: the NGO as a dictionary
+ * code and the order date as an epoch day, with the text only kept when it is not the ISO form.
+ * Product names are too many for a dictionary, which never forgets a value, so they stay strings. Pending-order lists only hold pending orders; history lists mix in completed ones.
+ * Immutable; tables read it through the getters.
+ */
 public class Order {
+    private static final Dictionary NGOS = new Dictionary();
+
     private final int id;
-    private final String ngoUsername;
+    private final int ngo;            // NGOS code
     private final int itemId;
     private final String itemName;
     private final int quantity;
-    private final String orderDate; // ISO-8601 string
+    private final int orderDay;       // epoch day of the order date, or FoodItem.NO_EXPIRY when not a date
+    private final String orderText;   // the order date as given, unless it is the ISO form of orderDay
+    private final boolean completed;
 
     public Order(int id, String ngoUsername, int itemId, String itemName, int quantity, String orderDate) {
+        this(id, ngoUsername, itemId, itemName, quantity, orderDate, false);
+    }
+
+    public Order(int id, String ngoUsername, int itemId, String itemName, int quantity, String orderDate, boolean completed) {
         this.id = id;
-        this.ngoUsername = ngoUsername;
+        this.ngo = NGOS.encode(ngoUsername);
         this.itemId = itemId;
         this.itemName = itemName;
         this.quantity = quantity;
-        this.orderDate = orderDate;
+        int day = FoodItem.parseExpiryDay(orderDate);
+        this.orderDay = day;
+        this.orderText = day != FoodItem.NO_EXPIRY && orderDate.equals(LocalDate.ofEpochDay(day).toString()) ? null : orderDate;
+        this.completed = completed;
     }
 
     public int getId() { return id; }
-    public String getNgoUsername() { return ngoUsername; }
+    public String getNgoUsername() { return NGOS.decode(ngo); }
     public int getItemId() { return itemId; }
     public String getItemName() { return itemName; }
     public int getQuantity() { return quantity; }
-    public String getOrderDate() { return orderDate; }
+    public boolean isCompleted() { return completed; }
+
+    /** ISO-8601 date as stored. */
+    public String getOrderDate() {
+        return orderText != null || orderDay == FoodItem.NO_EXPIRY ? orderText : LocalDate.ofEpochDay(orderDay).toString();
+    }
 }
@@ -0,0 +1,23 @@
+package model;
+
+/** One line of a multi-item order: an item and how much of it. */
+public class OrderLine {
+    private final int itemId;
+    private final String itemName;
+    private final int quantity;
+
+    public OrderLine(int itemId, String itemName, int quantity) {
+        this.itemId = itemId;
+        this.itemName = itemName;
+        this.quantity = quantity;
+    }
+
+    public int getItemId() { return itemId; }
+    public String getItemName() { return itemName; }
+    public int getQuantity() { return quantity; }
+
+    @Override
+    public String toString() {
+        return itemName + " x " + quantity;
+    }
+}
@@ -0,0 +1,116 @@
+package model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * In-memory name prefix index for typeahead pickers.
+ *
+ * Items are kept in two arrays sorted by (lowercase name, id), one for items in stock and one for
+ * the rest, so the first matches for a prefix, in stock first, take two binary searches and a scan
+ * of just the rows returned, however large the catalog. A change moves one entry in place; a load
+ * that adds items in key order (see DBUtil#loadPrefixIndex) only appends.
+ *
+ * Not thread-safe: build it on one thread, then confine it to the FX thread.
+ */
+public final class PrefixIndex {
+    private final Shelf inStock = new Shelf();
+    private final Shelf outOfStock = new Shelf();
+    private final Map<Integer, String> keyById = new HashMap<>();
+    private long seq;
+
+    /** Adds an item, replacing any previous entry with the same id. */
+    public void put(int id, String name, int quantity) {
+        remove(id);
+        String key = normalize(name);
+        keyById.put(id, key);
+        (quantity > 0 ? inStock : outOfStock).add(key, id);
+    }
+
+    public void remove(int id) {
+        String key = keyById.remove(id);
+        if (key != null && !inStock.remove(key, id)) outOfStock.remove(key, id);
+    }
+
+    public int size() {
+        return keyById.size();
+    }
+
+    /** Change sequence of food_items this index reflects. */
+    public long getSeq() { return seq; }
+    public void setSeq(long seq) { this.seq = seq; }
+
+    /**
+     * Ids of at most {@code limit} items whose name starts with {@code prefix}, case-insensitively:
+     * items in stock first, then the rest, each by name and id.
+     */
+    public int[] search(String prefix, int limit) {
+        String p = normalize(prefix);
+        int[] ids = new int[limit];
+        int n = inStock.collect(p, ids, 0);
+        n = outOfStock.collect(p, ids, n);
+        return n == limit ? ids : Arrays.copyOf(ids, n);
+    }
+
+    private static String normalize(String s) {
+        return s == null ? "" : s.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /** Entries as parallel arrays sorted by (key, id). */
+    private static final class Shelf {
+        private String[] keys = new String[256];
+        private int[] ids = new int[256];
+        private int size;
+
+        void add(String key, int id) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            // Loads arrive in key order, so this is usually an append
+            int at = size == 0 || compare(keys[size - 1], ids[size - 1], key, id) < 0 ? size : -find(key, id) - 1;
+            System.arraycopy(keys, at, keys, at + 1, size - at);
+            System.arraycopy(ids, at, ids, at + 1, size - at);
+            keys[at] = key;
+            ids[at] = id;
+            size++;
+        }
+
+        boolean remove(String key, int id) {
+            int at = find(key, id);
+            if (at < 0) return false;
+            System.arraycopy(keys, at + 1, keys, at, size - at - 1);
+            System.arraycopy(ids, at + 1, ids, at, size - at - 1);
+            keys[--size] = null;
+            return true;
+        }
+
+        /** Appends the ids of entries starting with {@code prefix} to {@code out} from {@code n}; returns the new count. */
+        int collect(String prefix, int[] out, int n) {
+            for (int i = -find(prefix, Integer.MIN_VALUE) - 1; i < size && n < out.length && keys[i].startsWith(prefix); i++) {
+                out[n++] = ids[i];
+            }
+            return n;
+        }
+
+        /** Position of (key, id), or (-insertion point - 1) when absent. */
+        private int find(String key, int id) {
+            int lo = 0, hi = size - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                int c = compare(keys[mid], ids[mid], key, id);
+                if (c < 0) lo = mid + 1;
+                else if (c > 0) hi = mid - 1;
+                else return mid;
+            }
+            return -lo - 1;
+        }
+
+        private static int compare(String keyA, int idA, String keyB, int idB) {
+            int c = keyA.compareTo(keyB);
+            return c != 0 ? c : Integer.compare(idA, idB);
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * In-memory substring index over food item names and categories.
+ *
+ * Each item is stored once as a precomputed lowercase key, and every trigram of that key has a
+ * posting list of the documents containing it. A query of three or more characters intersects the
+ * postings of its trigrams and only verifies the survivors; shorter queries scan the keys.
+ * A query that extends the previous one (the usual case while typing) just re-checks the previous
+ * hits. Replaced or removed items leave dead documents behind until {@link #compactIfNeeded()}.
+ *
+ * Not thread-safe: build it on one thread, then confine it to the FX thread.
+ */
+public final class SearchIndex {
+    private static final char FIELD_SEPARATOR = '\u0000'; // keeps a match from spanning name and category
+
+    private int[] docIds = new int[1024];
+    private String[] keys = new String[1024];
+    private boolean[] dead = new boolean[1024];
+    private int docCount;
+    private int deadCount;
+    private int version;
+    private long seq;
+
+    private final Map<Integer, Integer> docById = new HashMap<>();
+    private final Map<Long, Postings> postings = new HashMap<>();
+
+    /** Adds an item, replacing any previous entry with the same id. */
+    public void put(int id, String name, String category) {
+        remove(id);
+        String key = normalize(name) + FIELD_SEPARATOR + normalize(category);
+        if (docCount == docIds.length) {
+            int capacity = docCount * 2;
+            docIds = Arrays.copyOf(docIds, capacity);
+            keys = Arrays.copyOf(keys, capacity);
+            dead = Arrays.copyOf(dead, capacity);
+        }
+        int doc = docCount++;
+        docIds[doc] = id;
+        keys[doc] = key;
+        docById.put(id, doc);
+        for (int i = 0; i + 3 <= key.length(); i++) {
+            long gram = trigram(key, i);
+            if (gram < 0) continue;
+            postings.computeIfAbsent(gram, g -> new Postings()).add(doc);
+        }
+        version++;
+    }
+
+    public void remove(int id) {
+        Integer doc = docById.remove(id);
+        if (doc != null) {
+            dead[doc] = true;
+            keys[doc] = null;
+            deadCount++;
+            version++;
+        }
+    }
+
+    public int size() {
+        return docById.size();
+    }
+
+    /** Change sequence of food_items this index reflects. */
+    public long getSeq() { return seq; }
+    public void setSeq(long seq) { this.seq = seq; }
+
+    /**
+     * Ids of items whose name or category contains {@code query}, case-insensitively, in insertion order.
+     * Pass the previous result to refine it when the new query extends the old one.
+     */
+    public Result search(String query, Result previous) {
+        String q = normalize(query);
+        int[] docs;
+        if (previous != null && previous.version == version && q.contains(previous.query)) {
+            docs = verify(previous.docs, previous.docs.length, q);
+        } else if (q.length() < 3) {
+            docs = scan(q);
+        } else {
+            docs = lookup(q);
+        }
+        int[] ids = new int[docs.length];
+        for (int i = 0; i < docs.length; i++) ids[i] = docIds[docs[i]];
+        return new Result(q, version, docs, ids);
+    }
+
+    /** Rebuilds the postings without dead documents once they make up a quarter of the index. */
+    public void compactIfNeeded() {
+        if (deadCount * 4 < docCount) return;
+        int[] oldIds = docIds;
+        String[] oldKeys = keys;
+        int oldCount = docCount;
+        docIds = new int[Math.max(1024, docById.size() * 2)];
+        keys = new String[docIds.length];
+        dead = new boolean[docIds.length];
+        docCount = 0;
+        deadCount = 0;
+        docById.clear();
+        postings.clear();
+        for (int doc = 0; doc < oldCount; doc++) {
+            if (oldKeys[doc] == null) continue;
+            int sep = oldKeys[doc].indexOf(FIELD_SEPARATOR);
+            put(oldIds[doc], oldKeys[doc].substring(0, sep), oldKeys[doc].substring(sep + 1));
+        }
+    }
+
+    private int[] lookup(String q) {
+        List<Postings> lists = new ArrayList<>();
+        for (int i = 0; i + 3 <= q.length(); i++) {
+            Postings p = postings.get(trigram(q, i));
+            if (p == null) return new int[0];
+            lists.add(p);
+        }
+        lists.sort((a, b) -> Integer.compare(a.size, b.size));
+        int[] candidates = Arrays.copyOf(lists.get(0).docs, lists.get(0).size);
+        int count = candidates.length;
+        for (int l = 1; l < lists.size() && count > 0; l++) {
+            count = intersect(candidates, count, lists.get(l));
+        }
+        // Trigrams only prove the pieces are present; confirm the whole substring
+        return verify(candidates, count, q);
+    }
+
+    private int[] scan(String q) {
+        int[] hits = new int[16];
+        int n = 0;
+        for (int doc = 0; doc < docCount; doc++) {
+            if (dead[doc] || !keys[doc].contains(q)) continue;
+            if (n == hits.length) hits = Arrays.copyOf(hits, n * 2);
+            hits[n++] = doc;
+        }
+        return Arrays.copyOf(hits, n);
+    }
+
+    private int[] verify(int[] docs, int count, String q) {
+        int[] hits = new int[count];
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            int doc = docs[i];
+            if (!dead[doc] && keys[doc].contains(q)) hits[n++] = doc;
+        }
+        return Arrays.copyOf(hits, n);
+    }
+
+    /** Keeps the candidates (sorted ascending) that also appear in {@code other}; returns the new count. */
+    private static int intersect(int[] candidates, int count, Postings other) {
+        int n = 0, j = 0;
+        for (int i = 0; i < count && j < other.size; i++) {
+            int doc = candidates[i];
+            while (j < other.size && other.docs[j] < doc) j++;
+            if (j < other.size && other.docs[j] == doc) candidates[n++] = doc;
+        }
+        return n;
+    }
+
+    private static long trigram(String s, int at) {
+        char a = s.charAt(at), b = s.charAt(at + 1), c = s.charAt(at + 2);
+        if (a == FIELD_SEPARATOR || b == FIELD_SEPARATOR || c == FIELD_SEPARATOR) return -1;
+        return ((long) a << 32) | ((long) b << 16) | c;
+    }
+
+    private static String normalize(String s) {
+        return s == null ? "" : s.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /** Outcome of a search; also the starting point for refining the next, longer query. */
+    public static final class Result {
+        private final String query;
+        private final int version;
+        private final int[] docs;
+        private final int[] ids;
+
+        private Result(String query, int version, int[] docs, int[] ids) {
+            this.query = query;
+            this.version = version;
+            this.docs = docs;
+            this.ids = ids;
+        }
+
+        public int[] getIds() { return ids; }
+        public int count() { return ids.length; }
+
+        /** True when these hits are a subset of {@code earlier}'s: same index state, longer query. */
+        public boolean narrows(Result earlier) {
+            return earlier != null && earlier.version == version && query.contains(earlier.query);
+        }
+    }
+
+    private static final class Postings {
+        private int[] docs = new int[4];
+        private int size;
+
+        void add(int doc) {
+            // Documents arrive in increasing order, so a repeated trigram within one key is the last entry
+            if (size > 0 && docs[size - 1] == doc) return;
+            if (size == docs.length) docs = Arrays.copyOf(docs, size * 2);
+            docs[size++] = doc;
+        }
+    }
+}
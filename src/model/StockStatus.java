@@ -0,0 +1,30 @@
+package model;
+
+/**
+ * Alert state of a food item on a given day, most urgent first. An item has exactly one
+ * status; low stock only shows when the expiry date is not a concern.
+ */
+public enum StockStatus {
+    EXPIRED("Expired"),
+    EXPIRING_SOON("Expiring Soon"),
+    LOW_STOCK("Low Stock"),
+    NORMAL("Normal");
+
+    private final String label;
+
+    StockStatus(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() { return label; }
+
+    /** Status of an item with the given expiry day (or {@link FoodItem#NO_EXPIRY}) and quantity on {@code today}. */
+    public static StockStatus of(int expiryDay, int quantity, long today) {
+        if (expiryDay != FoodItem.NO_EXPIRY) {
+            long daysUntilExpiry = expiryDay - today;
+            if (daysUntilExpiry <= 0) return EXPIRED;
+            if (daysUntilExpiry <= FoodItem.EXPIRING_SOON_DAYS) return EXPIRING_SOON;
+        }
+        return quantity < FoodItem.LOW_STOCK_THRESHOLD ? LOW_STOCK : NORMAL;
+    }
+}
@@ -0,0 +1,81 @@
+package database;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+
+/**
+ * Checks that {@link Catalog}'s in-memory ids survive only the transactions that committed them.
+ * Entries created by a rolled-back transaction free their rowids for the next insert, so an id
+ * remembered from one would name a different entry; every id resolved here is read back by name.
+ *
+ * Plain main, no test framework: compile it next to src and run {@code java database.CatalogTest};
+ * it exits non-zero on failure.
+ */
+public final class CatalogTest {
+    public static void main(String[] args) throws Exception {
+        File file = File.createTempFile("catalog-test", ".db");
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + file.getPath())) {
+            SchemaMigrations.migrate(connection);
+            Catalog.forgetAll();
+
+            // Whole transaction rolled back
+            fails(() -> DBUtil.inTransaction(connection, c -> {
+                Catalog.productId(c, "Peas", Catalog.categoryId(c, "Frozen"));
+                Catalog.categoryId(c, "Dairy");
+                throw new SQLException("rolled back");
+            }));
+            int dairy = DBUtil.inTransaction(connection, c -> Catalog.categoryId(c, "Dairy"));
+            int frozen = DBUtil.inTransaction(connection, c -> Catalog.categoryId(c, "Frozen"));
+            int peas = DBUtil.inTransaction(connection, c -> Catalog.productId(c, "Peas", frozen));
+            checkName(connection, DatabaseConfig.TABLE_CATEGORIES, dairy, "Dairy");
+            checkName(connection, DatabaseConfig.TABLE_CATEGORIES, frozen, "Frozen");
+            checkName(connection, DatabaseConfig.TABLE_PRODUCTS, peas, "Peas");
+
+            // One command's savepoint rolled back inside a transaction that commits
+            connection.setAutoCommit(false);
+            int grains = DBUtil.inTransaction(connection, c -> Catalog.categoryId(c, "Grains"));
+            fails(() -> DBUtil.inTransaction(connection, c -> {
+                Catalog.categoryId(c, "Snacks");
+                throw new SQLException("rolled back");
+            }));
+            int drinks = DBUtil.inTransaction(connection, c -> Catalog.categoryId(c, "Drinks"));
+            int snacks = DBUtil.inTransaction(connection, c -> Catalog.categoryId(c, "Snacks"));
+            connection.commit();
+            Catalog.committed();
+            connection.setAutoCommit(true);
+            checkName(connection, DatabaseConfig.TABLE_CATEGORIES, grains, "Grains");
+            checkName(connection, DatabaseConfig.TABLE_CATEGORIES, drinks, "Drinks");
+            checkName(connection, DatabaseConfig.TABLE_CATEGORIES, snacks, "Snacks");
+
+            // Committed ids are answered from memory
+            check(Catalog.categoryId(connection, "Dairy") == dairy, "same id for a committed category");
+            check(Catalog.productId(connection, "Peas", frozen) == peas, "same id for a committed product");
+            check(Catalog.categoryId(connection, null) == Catalog.categoryId(connection, ""), "null is the \"\" category");
+        } finally {
+            Catalog.forgetAll();
+            file.delete();
+        }
+        System.out.println("CatalogTest passed");
+    }
+
+    private static void checkName(Connection connection, String table, int id, String name) throws SQLException {
+        String actual = DBUtil.query(connection, "SELECT name FROM " + table + " WHERE id = ?", rs -> rs.getString(1), id)
+                .stream().findFirst().orElse(null);
+        check(name.equals(actual), table + " id " + id + " should be " + name + ", is " + actual);
+    }
+
+    private static void fails(AsyncRepository.SqlAction action) {
+        try {
+            action.run();
+        } catch (SQLException expected) {
+            return;
+        }
+        throw new AssertionError("expected the transaction to fail");
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) throw new AssertionError(what);
+    }
+}
@@ -0,0 +1,58 @@
+package database;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.List;
+
+import model.FoodItem;
+
+/**
+ * Checks the upsert modes of {@link DBUtil#importFoodItemBatch} against a lot that already exists
+ * twice (adding an item never merges lots): each manifest line must update exactly one row, the
+ * oldest, and report it once, rather than add its quantity to every duplicate.
+ *
+ * Plain main, no test framework: compile it next to src and run {@code java database.ImportFoodItemBatchTest};
+ * it exits non-zero on failure.
+ */
+public final class ImportFoodItemBatchTest {
+    public static void main(String[] args) throws Exception {
+        File file = File.createTempFile("import-test", ".db");
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + file.getPath())) {
+            SchemaMigrations.migrate(connection);
+            DBUtil.insertFoodItem(connection, "Basmati Rice", "Grains", 10, "2027-01-15");
+            DBUtil.insertFoodItem(connection, "Basmati Rice", "Grains", 5, "2027-01-15");
+
+            int updated = DBUtil.importFoodItemBatch(connection, List.of(
+                    new FoodItem(0, "Basmati Rice", "Grains", 7, "2027-01-15"),
+                    new FoodItem(0, "Brown Bread", "Bakery", 3, "2026-11-02")), CsvImporter.Mode.ADD_QUANTITY);
+            check(updated == 1, "one line updated, got " + updated);
+            List<FoodItem> rice = rice(connection);
+            check(rice.size() == 2, "still two rice lots, got " + rice.size());
+            check(rice.get(0).getQuantity() == 17, "oldest lot got the quantity, has " + rice.get(0).getQuantity());
+            check(rice.get(1).getQuantity() == 5, "newer lot untouched, has " + rice.get(1).getQuantity());
+            check(DBUtil.listFoodItems(connection, "id").size() == 3, "the unmatched line was inserted");
+
+            updated = DBUtil.importFoodItemBatch(connection, List.of(
+                    new FoodItem(0, "Basmati Rice", "Grains", 4, "2027-01-15")), CsvImporter.Mode.REPLACE_QUANTITY);
+            check(updated == 1, "one line replaced, got " + updated);
+            rice = rice(connection);
+            check(rice.get(0).getQuantity() == 4 && rice.get(0).getVersion() == 1, "oldest lot replaced, has " +
+                    rice.get(0).getQuantity() + " version " + rice.get(0).getVersion());
+            check(rice.get(1).getQuantity() == 5 && rice.get(1).getVersion() == 0, "newer lot untouched, has " +
+                    rice.get(1).getQuantity() + " version " + rice.get(1).getVersion());
+        } finally {
+            file.delete();
+        }
+        System.out.println("ImportFoodItemBatchTest passed");
+    }
+
+    /** The rice lots, oldest first. */
+    private static List<FoodItem> rice(Connection connection) throws Exception {
+        return DBUtil.listFoodItems(connection, "id").stream().filter(item -> item.getName().equals("Basmati Rice")).toList();
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) throw new AssertionError(what);
+    }
+}
@@ -0,0 +1,53 @@
+package database;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.List;
+
+import model.FoodItem;
+
+/**
+ * End-to-end check of {@link DBUtil#searchFoodItems}: migrates a scratch database to the latest
+ * schema, inserts and edits a lot, and searches for it through the full-text index. The search
+ * query maps its rows with {@link DBUtil#toFoodItem}, so a column that mapper reads but the
+ * search does not select fails here instead of in the UI.
+ *
+ * Plain main, no test framework: compile it next to src and run {@code java database.SearchFoodItemsTest};
+ * it exits non-zero on failure.
+ */
+public final class SearchFoodItemsTest {
+    public static void main(String[] args) throws Exception {
+        File file = File.createTempFile("search-test", ".db");
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + file.getPath())) {
+            SchemaMigrations.migrate(connection);
+            DBUtil.insertFoodItem(connection, "Basmati Rice", "Grains", 12, "2027-01-15");
+            DBUtil.insertFoodItem(connection, "Brown Bread", "Bakery", 3, "");
+
+            List<FoodItem> found = DBUtil.searchFoodItems(connection, "ric bas", 10);
+            check(found.size() == 1, "one hit for 'ric bas', got " + found.size());
+            FoodItem rice = found.get(0);
+            check("Basmati Rice".equals(rice.getName()), "name, got " + rice.getName());
+            check("Grains".equals(rice.getCategory()), "category, got " + rice.getCategory());
+            check(rice.getQuantity() == 12, "quantity, got " + rice.getQuantity());
+            check("2027-01-15".equals(rice.getExpiryDate()), "expiry date, got " + rice.getExpiryDate());
+            check(rice.getVersion() == 0, "version of a new lot, got " + rice.getVersion());
+
+            UpdateResult result = DBUtil.updateFoodItem(connection, rice.getId(), rice.getVersion(), "Basmati Rice", "Grains", 5, "2027-01-15");
+            check(result.isApplied(), "edit applied");
+            rice = DBUtil.searchFoodItems(connection, "basmati", 10).get(0);
+            check(rice.getQuantity() == 17 && rice.getVersion() == 1, "edit visible to search, got quantity " +
+                    rice.getQuantity() + " version " + rice.getVersion());
+
+            check(DBUtil.searchFoodItems(connection, "bakery", 10).size() == 1, "category words are searched");
+            check(DBUtil.searchFoodItems(connection, "\"*()", 10).isEmpty(), "punctuation alone finds nothing");
+        } finally {
+            file.delete();
+        }
+        System.out.println("SearchFoodItemsTest passed");
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) throw new AssertionError(what);
+    }
+}